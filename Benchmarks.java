@@ -0,0 +1,259 @@
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Scanner;
+
+/** Times the hot paths of the text generation program.
+ *  Usage: java Benchmarks benchmarkName fileName */
+public class Benchmarks {
+    public static void main(String[] args) throws IOException {
+        String benchmarkName = args[0];
+        String fileName = args[1];
+        switch (benchmarkName) {
+            case "readAll":
+                benchmarkReadAll(fileName);
+                break;
+            case "readChar":
+                benchmarkReadChar(fileName);
+                break;
+            case "readAllInts":
+                benchmarkReadAllInts(fileName);
+                break;
+            case "lookup":
+                benchmarkLookup(fileName);
+                break;
+            case "train":
+                benchmarkTrain(fileName);
+                break;
+            case "generate":
+                benchmarkGenerate(fileName);
+                break;
+            case "sample":
+                benchmarkSample(fileName);
+                break;
+            case "probeDepth":
+                benchmarkProbeDepth(fileName);
+                break;
+            default:
+                System.out.println("Unknown benchmark: " + benchmarkName);
+                break;
+        }
+    }
+
+    // Returns an In that reads the given file through a Scanner only, as In used to.
+    private static In scannerIn(String fileName) throws IOException {
+        Scanner scanner = new Scanner(new BufferedInputStream(new FileInputStream(fileName)), "UTF-8");
+        scanner.useLocale(Locale.US);
+        return new In(scanner);
+    }
+
+    // Prints the time taken to process a number of items (chars, numbers...), and the throughput.
+    private static void report(String name, long items, String unit, long startNanos) {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        System.out.printf("%-24s %12d %-7s %8.3f s %10.1f M%s/s%n", name, items, unit, seconds, items / seconds / 1e6, unit);
+    }
+
+    // Times In.readAll, with the buffered reader and with the Scanner.
+    private static void benchmarkReadAll(String fileName) throws IOException {
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            report("readAll (reader)", new In(fileName).readAll().length(), "chars", start);
+            start = System.nanoTime();
+            report("readAll (scanner)", scannerIn(fileName).readAll().length(), "chars", start);
+        }
+    }
+
+    // Times a loop of In.readChar calls, with the buffered reader and with the Scanner.
+    private static void benchmarkReadChar(String fileName) throws IOException {
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            In in = new In(fileName);
+            long chars = 0;
+            while (in.hasNextChar()) {
+                in.readChar();
+                chars++;
+            }
+            report("readChar (reader)", chars, "chars", start);
+            start = System.nanoTime();
+            in = scannerIn(fileName);
+            chars = 0;
+            while (in.hasNextChar()) {
+                in.readChar();
+                chars++;
+            }
+            report("readChar (scanner)", chars, "chars", start);
+        }
+    }
+
+    // Times In.readAllInts, against splitting the input into strings and parsing each.
+    private static void benchmarkReadAllInts(String fileName) throws IOException {
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            int[] vals = new In(fileName).readAllInts();
+            report("readAllInts (parser)", vals.length, "ints", start);
+            start = System.nanoTime();
+            String[] fields = scannerIn(fileName).readAllStrings();
+            vals = new int[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                vals[i] = Integer.parseInt(fields[i]);
+            }
+            report("readAllInts (split)", vals.length, "ints", start);
+        }
+    }
+
+    // Times the lookup of every window of the corpus (window length 7), in the
+    // model's HashMap and in its compiled WindowTable.
+    private static void benchmarkLookup(String fileName) throws IOException {
+        LanguageModel lm = new LanguageModel(7, 20);
+        lm.train(fileName);
+        String text = new In(fileName).readAll();
+        WindowTable table = new WindowTable(lm.CharDataMap, 7);
+        int windows = text.length() - 7;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            long found = 0;
+            for (int i = 0; i < windows; i++) {
+                found += lm.CharDataMap.get(text.substring(i, i + 7)).getSize();
+            }
+            report("lookup (HashMap)", windows, "windows", start);
+            start = System.nanoTime();
+            long found2 = 0;
+            for (int i = 0; i < windows; i++) {
+                found2 += table.listSize(table.find(text, i));
+            }
+            report("lookup (WindowTable)", windows, "windows", start);
+            if (found != found2) {
+                System.out.println("Lookups disagree: " + found + " != " + found2);
+            }
+        }
+    }
+
+    // Prints the average number of list elements visited to update a list (while
+    // training) and to sample a character (from the trained lists), over all the
+    // windows of the corpus, in the default order and in the frequency order.
+    // Also times training in each order.
+    private static void benchmarkProbeDepth(String fileName) throws IOException {
+        String text = new In(fileName).readAll();
+        for (int windowLength : new int[] {2, 7}) {
+            for (boolean ordered : new boolean[] {false, true}) {
+                String order = ordered ? "frequency" : "default";
+                HashMap<String, List> lists = new HashMap<String, List>();
+                long windows = text.length() - windowLength;
+                long updateProbes = 0;
+                for (int i = 0; i < windows; i++) {
+                    String window = text.substring(i, i + windowLength);
+                    char chr = text.charAt(i + windowLength);
+                    List probs = lists.get(window);
+                    if (probs == null) {
+                        probs = new List(ordered);
+                        lists.put(window, probs);
+                    }
+                    int index = probs.indexOf(chr);
+                    updateProbes += (index < 0) ? probs.getSize() : index + 1;
+                    probs.update(chr);
+                }
+                long sampleProbes = 0;
+                for (int i = 0; i < windows; i++) {
+                    sampleProbes += lists.get(text.substring(i, i + windowLength)).indexOf(text.charAt(i + windowLength)) + 1;
+                }
+                System.out.printf("window %d, %-9s order: %6.2f probes/update %6.2f probes/sample%n",
+                                  windowLength, order, (double) updateProbes / windows, (double) sampleProbes / windows);
+                long start = System.nanoTime();
+                LanguageModel lm = new LanguageModel(windowLength, 20);
+                lm.setFrequencyOrdered(ordered);
+                lm.train(fileName);
+                report("train (" + order + ")", windows, "windows", start);
+            }
+        }
+    }
+
+    // Times training (window length 7) with a new model each time, and with one
+    // model that counts in an arena and is cleared between runs.
+    private static void benchmarkTrain(String fileName) throws IOException {
+        long chars = new In(fileName).readAll().length();
+        LanguageModel arenaModel = new LanguageModel(7, 20);
+        arenaModel.setArenaTraining(true);
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            new LanguageModel(7, 20).train(fileName);
+            report("train (objects)", chars, "chars", start);
+            start = System.nanoTime();
+            arenaModel.clear();
+            arenaModel.train(fileName);
+            report("train (arena)", chars, "chars", start);
+        }
+    }
+
+    // Times generate for short windows (dense transition tables) and a long one
+    // (hashed window table), from the lists and from the compiled tables, with and
+    // without seed-compatible forced windows.
+    private static void benchmarkGenerate(String fileName) {
+        for (int windowLength : new int[] {1, 2, 3, 7}) {
+            LanguageModel lm = new LanguageModel(windowLength, 20);
+            lm.train(fileName);
+            String initialText = lm.CharDataMap.keySet().iterator().next();
+            for (boolean compiled : new boolean[] {false, true}) {
+                lm.setCompiledGeneration(compiled);
+                for (boolean seedCompatible : new boolean[] {true, false}) {
+                    lm.setSeedCompatible(seedCompatible);
+                    for (int round = 0; round < 3; round++) {
+                        long start = System.nanoTime();
+                        long chars = 0;
+                        for (int i = 0; i < 20; i++) {
+                            chars += lm.generate(initialText, 100000).length();
+                        }
+                        report("generate w=" + windowLength + (compiled ? " compiled" : "") + (seedCompatible ? "" : " (fast)"),
+                               chars, "chars", start);
+                    }
+                }
+            }
+        }
+    }
+
+    // Times the search for a random character in the longest list of a model with
+    // window length 1, by scanning its cumulative probabilities and with Distributions.
+    private static void benchmarkSample(String fileName) {
+        LanguageModel lm = new LanguageModel(1, 20);
+        lm.train(fileName);
+        List longest = new List();
+        for (List probs : lm.CharDataMap.values()) {
+            if (probs.getSize() > longest.getSize()) {
+                longest = probs;
+            }
+        }
+        int n = longest.getSize();
+        char[] chars = new char[n];
+        double[] cps = new double[n];
+        longest.copyInto(chars, null, cps, 0);
+        Distributions lists = new Distributions(n, 0);
+        lists.copy(longest, 0);
+        int samples = 10000000;
+        for (int round = 0; round < 3; round++) {
+            Random random = new Random(20);
+            long start = System.nanoTime();
+            long sum = 0;
+            for (int s = 0; s < samples; s++) {
+                double r = random.nextDouble();
+                int i = 0;
+                while (i < n - 1 && r >= cps[i]) {
+                    i++;
+                }
+                sum += chars[i];
+            }
+            report("sample " + n + " (scan)", samples, "samples", start);
+            random = new Random(20);
+            start = System.nanoTime();
+            long sum2 = 0;
+            for (int s = 0; s < samples; s++) {
+                sum2 += lists.charAt(0, n, random.nextDouble());
+            }
+            report("sample " + n + " (search)", samples, "samples", start);
+            if (sum != sum2) {
+                System.out.println("Searches disagree: " + sum + " != " + sum2);
+            }
+        }
+    }
+}
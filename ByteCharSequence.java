@@ -0,0 +1,43 @@
+import java.nio.ByteBuffer;
+
+/** A read-only sequence of characters backed by a buffer of single-byte
+ *  (ASCII or ISO-8859-1) characters, such as a memory-mapped file. The
+ *  characters are not copied: each char is the unsigned value of its byte. */
+public class ByteCharSequence implements CharSequence {
+
+    // The bytes of the characters, from position 0 to the limit
+    private final ByteBuffer bytes;
+
+    /** Constructs a sequence of the characters between the position and the limit
+     *  of the given buffer. The buffer itself is not modified. */
+    public ByteCharSequence(ByteBuffer bytes) {
+        this.bytes = bytes.slice();
+    }
+
+    /** Returns the number of characters in this sequence. */
+    public int length() {
+        return bytes.limit();
+    }
+
+    /** Returns the character at the given index of this sequence. */
+    public char charAt(int index) {
+        return (char) (bytes.get(index) & 0xff);
+    }
+
+    /** Returns a view of the characters between the given indexes of this sequence. */
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length());
+        }
+        ByteBuffer view = bytes.duplicate();
+        view.position(start).limit(end);
+        return new ByteCharSequence(view);
+    }
+
+    /** Returns the characters of this sequence, as a new String. */
+    public String toString() {
+        byte[] chars = new byte[length()];
+        bytes.duplicate().get(chars);
+        return new String(chars, java.nio.charset.StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,9 @@
+/** An operation on a character of a list and its count (see List.forEachChar).
+ *  Unlike a Consumer of CharData objects, it takes the character and the count
+ *  as primitives, so traversing a list with it neither boxes nor allocates. */
+@FunctionalInterface
+public interface CharCountConsumer {
+
+    /** Performs this operation on the given character and count. */
+    void accept(char chr, int count);
+}
@@ -0,0 +1,198 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/** A buffered reader of UTF-8 characters, used by In for its character and line
+ *  methods. The bytes are read into a large direct buffer and decoded in bulk
+ *  into a char array, without the regular expressions that a Scanner applies
+ *  to every read. Malformed input is replaced, as an InputStreamReader does.
+ *  A CharReader is also a Readable, so a Scanner can take over the rest of
+ *  the input at any point. */
+public class CharReader implements Readable, AutoCloseable {
+
+    // The sizes of the byte buffer and of the initial char buffer
+    private static final int BYTE_BUFFER_SIZE = 1 << 18;
+    private static final int CHAR_BUFFER_SIZE = 1 << 16;
+
+    // The source of the bytes, and the bytes read from it but not yet decoded
+    private final ReadableByteChannel channel;
+    private final ByteBuffer bytes = ByteBuffer.allocateDirect(BYTE_BUFFER_SIZE);
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    // The decoded characters; those between pos and lim are not read yet
+    private char[] buf = new char[CHAR_BUFFER_SIZE];
+    private int pos;
+    private int lim;
+
+    // True once the channel is exhausted, and once all its bytes are decoded
+    private boolean endOfInput;
+    private boolean eof;
+
+    /** Constructs a reader of the given stream. */
+    public CharReader(InputStream in) {
+        this(Channels.newChannel(in));
+    }
+
+    /** Constructs a reader of the given channel. */
+    public CharReader(ReadableByteChannel channel) {
+        this.channel = channel;
+        bytes.flip();
+    }
+
+    // Decodes more characters into the buffer, keeping the unread ones (and growing
+    // the buffer if they leave no room for a surrogate pair, the most characters
+    // that one code point decodes to). Returns false if there are no more characters.
+    private boolean fill() {
+        if (eof) {
+            return false;
+        }
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, lim - pos);
+            lim -= pos;
+            pos = 0;
+        }
+        if (buf.length - lim < 2) {
+            buf = java.util.Arrays.copyOf(buf, Math.max(2 * buf.length, lim + 2));
+        }
+        CharBuffer chars = CharBuffer.wrap(buf, lim, buf.length - lim);
+        try {
+            while (chars.position() == lim) {
+                if (!endOfInput) {
+                    bytes.compact();
+                    endOfInput = channel.read(bytes) < 0;
+                    bytes.flip();
+                }
+                CoderResult result = decoder.decode(bytes, chars, endOfInput);
+                if (result.isOverflow() && chars.position() == lim) {
+                    throw new IllegalStateException("no room to decode the next character");
+                }
+                if (endOfInput && result.isUnderflow()) {
+                    eof = decoder.flush(chars).isUnderflow();
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("could not read input", e);
+        }
+        int decoded = chars.position() - lim;
+        lim = chars.position();
+        return decoded > 0;
+    }
+
+    /** Returns the next character, without reading it, or -1 if there is none. */
+    public int peek() {
+        if (pos == lim && !fill()) {
+            return -1;
+        }
+        return buf[pos];
+    }
+
+    /** Reads and returns the next character, or -1 if there is none. */
+    public int read() {
+        if (pos == lim && !fill()) {
+            return -1;
+        }
+        return buf[pos++];
+    }
+
+    /** Reads the next line and returns it without its line separator, or returns
+     *  null if there is no more input. Like Scanner.nextLine, a line ends with
+     *  \r\n, \n, \r, \u2028, \u2029 or \u0085. */
+    public String readLine() {
+        if (pos == lim && !fill()) {
+            return null;
+        }
+        StringBuilder partial = null;
+        while (true) {
+            for (int i = pos; i < lim; i++) {
+                char c = buf[i];
+                if (c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029' || c == '\u0085') {
+                    String line = (partial == null) ? new String(buf, pos, i - pos)
+                                                    : partial.append(buf, pos, i - pos).toString();
+                    pos = i + 1;
+                    if (c == '\r' && peek() == '\n') {
+                        pos++;
+                    }
+                    return line;
+                }
+            }
+            if (partial == null) {
+                partial = new StringBuilder();
+            }
+            partial.append(buf, pos, lim - pos);
+            pos = lim;
+            if (!fill()) {
+                return partial.toString();
+            }
+        }
+    }
+
+    /** Reads and returns the rest of the input. */
+    public String readAll() {
+        StringBuilder rest = new StringBuilder();
+        while (pos < lim || fill()) {
+            rest.append(buf, pos, lim - pos);
+            pos = lim;
+        }
+        return rest.toString();
+    }
+
+    /** Reads the rest of the input, and returns a view of it in this reader's buffer
+     *  (which is not used again). */
+    public CharBuffer readAllChars() {
+        while (fill()) {
+            // keeps all the decoded characters in the buffer
+        }
+        CharBuffer rest = CharBuffer.wrap(buf, pos, lim - pos);
+        buf = new char[0];
+        pos = 0;
+        lim = 0;
+        return rest;
+    }
+
+    /** Checks if the rest of the input, which is not read, is only whitespace. */
+    public boolean isBlank() {
+        int i = pos;
+        while (true) {
+            for (; i < lim; i++) {
+                if (!Character.isWhitespace(buf[i])) {
+                    return false;
+                }
+            }
+            int read = i - pos;
+            if (!fill()) {
+                return true;
+            }
+            i = pos + read;
+        }
+    }
+
+    /** Reads characters into the given buffer (see Readable). */
+    public int read(CharBuffer target) {
+        if (pos == lim && !fill()) {
+            return -1;
+        }
+        int n = Math.min(target.remaining(), lim - pos);
+        target.put(buf, pos, n);
+        pos += n;
+        return n;
+    }
+
+    /** Closes the source of this reader. */
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new IllegalStateException("could not close input", e);
+        }
+    }
+}
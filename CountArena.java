@@ -0,0 +1,172 @@
+import java.util.Arrays;
+import java.util.Map;
+
+/** Counts the windows of a corpus, and the characters that follow them, in a few
+ *  large primitive arrays instead of a String, a List, and a Node and a CharData
+ *  per character. Windows are numbered in the order they are first seen; their
+ *  characters are stored inline in one char array, and found through an
+ *  open-addressing hash table of window numbers. The characters that follow a
+ *  window form a chain of int handles into the node arrays, newest first, as in
+ *  a List. The arrays grow as needed, and reset empties them without
+ *  reallocating, so one arena can serve many training runs. */
+public class CountArena {
+
+    // The maximal ratio of windows to hash table slots
+    private static final double LOAD_FACTOR = 0.5;
+
+    // The window length of the counted windows
+    private final int windowLength;
+
+    // The windows, by number: their characters (windowLength chars each), their
+    // hash codes, and the handle of the first node of their chain (-1 if none)
+    private char[] keys;
+    private int[] hashes;
+    private int[] heads;
+    private int windows;
+
+    // The hash table: the number of a window plus one in each slot (0 if empty)
+    private int[] slots;
+    private int mask;
+
+    // The nodes, by handle: their character, count, and the handle of the next node (-1 at the end)
+    private char[] chars;
+    private int[] counts;
+    private int[] next;
+    private int nodes;
+
+    /** Constructs an empty arena for windows of the given length. */
+    public CountArena(int windowLength) {
+        this.windowLength = windowLength;
+        keys = new char[1024 * windowLength];
+        hashes = new int[1024];
+        heads = new int[1024];
+        slots = new int[2048];
+        mask = slots.length - 1;
+        chars = new char[4096];
+        counts = new int[4096];
+        next = new int[4096];
+    }
+
+    /** Returns the number of distinct windows counted so far. */
+    public int windows() {
+        return windows;
+    }
+
+    /** Returns the number of distinct (window, character) pairs counted so far. */
+    public int nodes() {
+        return nodes;
+    }
+
+    /** Counts one occurrence of the window that starts at the given position of the
+     *  given text, followed by the given character. */
+    public void add(CharSequence text, int start, char chr) {
+        int window = findOrAdd(text, start);
+        for (int node = heads[window]; node >= 0; node = next[node]) {
+            if (chars[node] == chr) {
+                counts[node]++;
+                return;
+            }
+        }
+        if (nodes == chars.length) {
+            int capacity = 2 * nodes;
+            chars = Arrays.copyOf(chars, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            next = Arrays.copyOf(next, capacity);
+        }
+        chars[nodes] = chr;
+        counts[nodes] = 1;
+        next[nodes] = heads[window];
+        heads[window] = nodes++;
+    }
+
+    // Returns the number of the window that starts at the given position of the
+    // given text, numbering it if it is new.
+    private int findOrAdd(CharSequence text, int start) {
+        int hash = 0;
+        for (int i = start; i < start + windowLength; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        for (; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int window = slots[slot] - 1;
+            if (hashes[window] == hash && matches(window, text, start)) {
+                return window;
+            }
+        }
+        if (windows == heads.length) {
+            int capacity = 2 * windows;
+            keys = Arrays.copyOf(keys, capacity * windowLength);
+            hashes = Arrays.copyOf(hashes, capacity);
+            heads = Arrays.copyOf(heads, capacity);
+        }
+        int window = windows++;
+        for (int i = 0; i < windowLength; i++) {
+            keys[window * windowLength + i] = text.charAt(start + i);
+        }
+        hashes[window] = hash;
+        heads[window] = -1;
+        slots[slot] = window + 1;
+        if (windows > slots.length * LOAD_FACTOR) {
+            rehash(2 * slots.length);
+        }
+        return window;
+    }
+
+    // Returns true if the given window is the one that starts at the given position of the given text.
+    private boolean matches(int window, CharSequence text, int start) {
+        int key = window * windowLength;
+        for (int i = 0; i < windowLength; i++) {
+            if (keys[key + i] != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Rebuilds the hash table with the given number of slots (a power of two).
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        mask = capacity - 1;
+        for (int window = 0; window < windows; window++) {
+            int slot = (hashes[window] ^ (hashes[window] >>> 16)) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = window + 1;
+        }
+    }
+
+    /** Adds the counts of this arena to the given map, in the order the windows and
+     *  their characters were first seen, so the lists have the same order as if the
+     *  characters had been added one at a time with List.update. The new lists are
+     *  frequency-ordered if the given flag is true. */
+    public void addTo(Map<String, List> map, boolean frequencyOrdered) {
+        int[] chain = new int[16];
+        for (int window = 0; window < windows; window++) {
+            String key = new String(keys, window * windowLength, windowLength);
+            List probs = map.get(key);
+            if (probs == null) {
+                probs = new List(frequencyOrdered);
+                map.put(key, probs);
+            }
+            // The chain is newest first: adds its characters from the last one
+            int length = 0;
+            for (int node = heads[window]; node >= 0; node = next[node]) {
+                if (length == chain.length) {
+                    chain = Arrays.copyOf(chain, 2 * length);
+                }
+                chain[length++] = node;
+            }
+            for (int i = length - 1; i >= 0; i--) {
+                probs.update(chars[chain[i]], counts[chain[i]]);
+            }
+        }
+    }
+
+    /** Empties this arena, keeping its arrays for the next training run. */
+    public void reset() {
+        Arrays.fill(slots, 0);
+        windows = 0;
+        nodes = 0;
+    }
+}
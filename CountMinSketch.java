@@ -0,0 +1,78 @@
+/** A count-min sketch: a fixed-size table of counters that estimates how many
+ *  times each key was added. An estimate is never below the true count, and with
+ *  probability at least 1 - delta it exceeds it by at most epsilon times the
+ *  total number of keys added. */
+public class CountMinSketch {
+
+    // The counters, one row of width counters per hash function
+    private final int[] table;
+
+    // The number of counters in each row (a power of two)
+    private final int width;
+
+    // The number of rows (hash functions)
+    private final int depth;
+
+    // The total number of keys added to this sketch
+    private long total;
+
+    /** Constructs a sketch whose estimates are within epsilon * total of the true
+     *  counts, with probability at least 1 - delta. */
+    public CountMinSketch(double epsilon, double delta) {
+        if (epsilon <= 0 || epsilon >= 1 || delta <= 0 || delta >= 1) {
+            throw new IllegalArgumentException("epsilon and delta must be between 0 and 1");
+        }
+        width = Integer.highestOneBit((int) Math.ceil(Math.E / epsilon) * 2 - 1);
+        depth = (int) Math.ceil(Math.log(1 / delta));
+        table = new int[width * depth];
+    }
+
+    /** Adds one occurrence of the given key to this sketch, and returns its new
+     *  estimated count. The counters are updated conservatively: only those that
+     *  hold the current estimate are incremented, since the others already exceed
+     *  the new count. This keeps estimates of rare keys much closer to their true
+     *  counts, and an estimate is still never below the true count. */
+    public int add(long key) {
+        int estimate = estimate(key);
+        if (estimate != Integer.MAX_VALUE) {
+            for (int row = 0; row < depth; row++) {
+                int i = row * width + index(key, row);
+                if (table[i] == estimate) {
+                    table[i]++;
+                }
+            }
+            estimate++;
+        }
+        total++;
+        return estimate;
+    }
+
+    /** Returns the estimated number of times the given key was added to this sketch. */
+    public int estimate(long key) {
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, table[row * width + index(key, row)]);
+        }
+        return min;
+    }
+
+    /** Returns the total number of keys added to this sketch. */
+    public long getTotal() {
+        return total;
+    }
+
+    /** Returns the number of bytes used by the counters of this sketch. */
+    public long sizeInBytes() {
+        return 4L * table.length;
+    }
+
+    // Returns the column of the given key in the given row (a splitmix64 finalizer,
+    // seeded differently for each row).
+    private int index(long key, int row) {
+        long z = key + (row + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+        return (int) z & (width - 1);
+    }
+}
@@ -0,0 +1,155 @@
+import java.util.Arrays;
+import java.util.Map;
+
+/** A read-only table of the windows of a trained low-order language model,
+ *  indexed directly by the window instead of by its hash code. The characters
+ *  of the model (its alphabet) are numbered, and a window is packed into one
+ *  number, its state, in base alphabet size. For short windows over a small
+ *  alphabet (such as ASCII text), the table has a row for every possible state,
+ *  so generating a character costs one array lookup to find its list and one
+ *  multiplication to move to the next state: no hashing and no key comparison. */
+public class DenseTransitionTable {
+
+    // The largest window length, alphabet size and number of states of a dense table
+    public static final int MAX_WINDOW_LENGTH = 3;
+    public static final int MAX_ALPHABET_SIZE = 128;
+    private static final int MAX_STATES = 1 << 21;
+
+    // The rough heap cost (in bytes) of an array, without its elements
+    private static final int ARRAY_BYTES = 16;
+
+    // The window length of the table, the number of possible windows (states),
+    // and the number of states of windowLength - 1 characters
+    private final int windowLength;
+    private final int states;
+    private final int suffixStates;
+
+    // The number of each character of the alphabet (-1 for other characters),
+    // and the number of characters in the alphabet
+    private final short[] symbols;
+    private final int alphabetSize;
+
+    // For each state: the position of its list in the distributions (-1 if the
+    // model does not contain the window), and the length of the list
+    private final int[] offsets;
+    private final short[] lengths;
+
+    // The characters and cumulative probabilities of all the lists
+    private final Distributions lists;
+
+    private DenseTransitionTable(Map<String, List> map, int windowLength, short[] symbols, int alphabetSize,
+                                 int quantizationBits) {
+        this.windowLength = windowLength;
+        this.symbols = symbols;
+        this.alphabetSize = alphabetSize;
+        int n = 1;
+        for (int i = 0; i < windowLength; i++) {
+            n *= alphabetSize;
+        }
+        states = n;
+        suffixStates = n / alphabetSize;
+        offsets = new int[states];
+        lengths = new short[states];
+        Arrays.fill(offsets, -1);
+        int total = 0;
+        for (List probs : map.values()) {
+            total += probs.getSize();
+        }
+        lists = new Distributions(total, quantizationBits);
+        int offset = 0;
+        for (Map.Entry<String, List> entry : map.entrySet()) {
+            int state = state(entry.getKey(), 0);
+            offsets[state] = offset;
+            lengths[state] = (short) lists.copy(entry.getValue(), offset);
+            offset += entry.getValue().getSize();
+        }
+    }
+
+    /** Compiles the given map of windows (of the given length) to their lists, whose
+     *  probabilities must have been computed, into a dense table. Returns null if
+     *  the windows are longer than MAX_WINDOW_LENGTH, or if the windows and their
+     *  characters use more than MAX_ALPHABET_SIZE distinct characters. */
+    public static DenseTransitionTable build(Map<String, List> map, int windowLength) {
+        return build(map, windowLength, 0);
+    }
+
+    /** Compiles the given map into a dense table, as build(map, windowLength) does,
+     *  with probabilities quantized to the given number of bits (0, 8 or 16). */
+    public static DenseTransitionTable build(Map<String, List> map, int windowLength, int quantizationBits) {
+        if (windowLength < 1 || windowLength > MAX_WINDOW_LENGTH) {
+            return null;
+        }
+        short[] symbols = new short[Character.MAX_VALUE + 1];
+        Arrays.fill(symbols, (short) -1);
+        int[] alphabetSize = new int[1];
+        CharCountConsumer addSymbol = (chr, count) -> {
+            if (symbols[chr] < 0) {
+                symbols[chr] = (short) alphabetSize[0]++;
+            }
+        };
+        for (Map.Entry<String, List> entry : map.entrySet()) {
+            for (int i = 0; i < windowLength; i++) {
+                addSymbol.accept(entry.getKey().charAt(i), 0);
+            }
+            entry.getValue().forEachChar(addSymbol);
+            if (alphabetSize[0] > MAX_ALPHABET_SIZE) {
+                return null;
+            }
+        }
+        long states = 1;
+        for (int i = 0; i < windowLength; i++) {
+            states *= Math.max(1, alphabetSize[0]);
+        }
+        if (states > MAX_STATES) {
+            return null;
+        }
+        return new DenseTransitionTable(map, windowLength, symbols, Math.max(1, alphabetSize[0]), quantizationBits);
+    }
+
+    /** Returns an estimate of the number of bytes this table occupies on the heap. */
+    public long estimatedSize() {
+        return 3 * ARRAY_BYTES + 2L * symbols.length + states * (4L + 2) + lists.estimatedSize();
+    }
+
+    /** Returns the state of the window that starts at the given position of the
+     *  given text, or -1 if one of its characters is not in the alphabet. */
+    public int state(CharSequence text, int start) {
+        int state = 0;
+        for (int i = start; i < start + windowLength; i++) {
+            int symbol = symbols[text.charAt(i)];
+            if (symbol < 0) {
+                return -1;
+            }
+            state = state * alphabetSize + symbol;
+        }
+        return state;
+    }
+
+    /** Returns the state of the window that follows the window of the given state
+     *  (its last windowLength - 1 characters, then the given character), or -1
+     *  if the character is not in the alphabet. */
+    public int next(int state, char chr) {
+        int symbol = symbols[chr];
+        if (symbol < 0) {
+            return -1;
+        }
+        return (state % suffixStates) * alphabetSize + symbol;
+    }
+
+    /** Returns true if the model contains the window of the given state. */
+    public boolean contains(int state) {
+        return offsets[state] >= 0;
+    }
+
+    /** Returns the number of characters in the list of the given state. */
+    public int listSize(int state) {
+        return lengths[state];
+    }
+
+    /** Returns the first character in the list of the given state whose cp is
+     *  greater than r (or its last character, if there is no such character), as
+     *  LanguageModel.getRandomChar does; a space if the list is empty. */
+    public char charAt(int state, double r) {
+        return lists.charAt(offsets[state], offsets[state] + lengths[state], r);
+    }
+}
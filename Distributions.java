@@ -0,0 +1,121 @@
+/** The compiled lists of a language model (see WindowTable and DenseTransitionTable):
+ *  the characters of all the lists in one char array, and their cumulative
+ *  probabilities in one primitive array. A model quantized to 8 or 16 bits (see
+ *  LanguageModel.setQuantization) stores each cumulative probability as its level,
+ *  in a byte or a short, instead of in a double. */
+public class Distributions {
+
+    // Ranges shorter than this are scanned; longer ones are binary searched
+    private static final int BINARY_SEARCH_MIN_LENGTH = 16;
+
+    // The rough heap cost (in bytes) of an array, without its elements
+    private static final int ARRAY_BYTES = 16;
+
+    // The characters of the lists
+    private final char[] chars;
+
+    // The cumulative probabilities of the lists: in full precision, or as levels of
+    // 8 or 16 bits out of maxLevel (only one of the arrays is not null)
+    private final double[] cps;
+    private final short[] cps16;
+    private final byte[] cps8;
+    private final int quantizationBits;
+    private final int maxLevel;
+
+    /** Constructs room for the given number of characters, whose cumulative
+     *  probabilities are quantized to the given number of bits (0, 8 or 16). */
+    public Distributions(int size, int quantizationBits) {
+        chars = new char[size];
+        cps = (quantizationBits == 0) ? new double[size] : null;
+        cps16 = (quantizationBits == 16) ? new short[size] : null;
+        cps8 = (quantizationBits == 8) ? new byte[size] : null;
+        this.quantizationBits = quantizationBits;
+        maxLevel = (1 << quantizationBits) - 1;
+    }
+
+    /** Copies the characters and cumulative probabilities of the given list, whose
+     *  probabilities must have been computed (and quantized, if this is quantized),
+     *  from the given position. Returns their number. */
+    public int copy(List probs, int offset) {
+        if (cps != null) {
+            return probs.copyInto(chars, null, cps, offset);
+        }
+        int i = offset;
+        ListIterator itr = probs.listIterator(0);
+        while (itr.hasNext()) {
+            CharData cd = itr.next();
+            chars[i] = cd.chr;
+            long level = Math.round(cd.cp * maxLevel);
+            if (cps16 != null) {
+                cps16[i] = (short) level;
+            } else {
+                cps8[i] = (byte) level;
+            }
+            i++;
+        }
+        return i - offset;
+    }
+
+    /** Returns the character at the given position. */
+    public char charAt(int i) {
+        return chars[i];
+    }
+
+    // Returns the cumulative probability at the given position. A quantized one is
+    // the same double as the cp of its CharData (level / maxLevel).
+    private double cp(int i) {
+        if (cps != null) {
+            return cps[i];
+        }
+        int level = (cps16 != null) ? cps16[i] & 0xffff : cps8[i] & 0xff;
+        return level / (double) maxLevel;
+    }
+
+    /** Returns the first character between the given positions whose cumulative
+     *  probability is greater than r (or the last one, if there is none), as
+     *  LanguageModel.getRandomChar picks a character; a space if the range is empty. */
+    public char charAt(int from, int to, double r) {
+        if (from == to) {
+            return ' ';
+        }
+        return chars[search(from, to, r)];
+    }
+
+    // Returns the position of the first cumulative probability greater than r between
+    // the given positions, or the last position if there is none. The range must not
+    // be empty. Long ranges are binary searched, which gives the same position as a
+    // scan since the cumulative probabilities are non-decreasing.
+    private int search(int from, int to, double r) {
+        if (to - from < BINARY_SEARCH_MIN_LENGTH) {
+            for (int i = from; i < to; i++) {
+                if (r < cp(i)) {
+                    return i;
+                }
+            }
+            return to - 1;
+        }
+        int low = from;
+        int high = to - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (r < cp(middle)) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    /** Returns an estimate of the number of bytes these distributions occupy on the heap. */
+    public long estimatedSize() {
+        return estimatedSize(chars.length, quantizationBits);
+    }
+
+    /** Returns an estimate of the number of bytes that distributions of the given
+     *  number of characters, quantized to the given number of bits, would occupy. */
+    public static long estimatedSize(long size, int quantizationBits) {
+        int cpBytes = (quantizationBits == 0) ? 8 : quantizationBits / 8;
+        return 2 * ARRAY_BYTES + size * (2 + cpBytes);
+    }
+}
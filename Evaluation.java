@@ -0,0 +1,57 @@
+/** The result of evaluating a language model on held-out text: the log-likelihood
+ *  of the text under the model, and measures derived from it. */
+public class Evaluation {
+
+    // The number of characters that were predicted
+    long characters;
+
+    // The number of characters that the model has never seen after their window
+    long unseen;
+
+    // The sum of the natural logarithms of the probabilities of the predicted characters
+    double logLikelihood;
+
+    /** Constructs an evaluation with the given totals. */
+    public Evaluation(long characters, long unseen, double logLikelihood) {
+        this.characters = characters;
+        this.unseen = unseen;
+        this.logLikelihood = logLikelihood;
+    }
+
+    /** Returns an evaluation that combines this evaluation with the given one. */
+    public Evaluation combine(Evaluation other) {
+        return new Evaluation(characters + other.characters, unseen + other.unseen,
+                              logLikelihood + other.logLikelihood);
+    }
+
+    /** Returns the number of characters that were predicted. */
+    public long getCharacters() {
+        return characters;
+    }
+
+    /** Returns the number of predicted characters that were unseen by the model. */
+    public long getUnseen() {
+        return unseen;
+    }
+
+    /** Returns the sum of the natural logarithms of the probabilities of the predicted characters. */
+    public double getLogLikelihood() {
+        return logLikelihood;
+    }
+
+    /** Returns the cross-entropy of the model on the text, in bits per character. */
+    public double crossEntropy() {
+        return -logLikelihood / Math.log(2) / characters;
+    }
+
+    /** Returns the perplexity of the model on the text. */
+    public double perplexity() {
+        return Math.pow(2, crossEntropy());
+    }
+
+    /** Returns a textual representation of this evaluation. */
+    public String toString() {
+        return "(" + characters + " chars, " + unseen + " unseen, " + crossEntropy()
+               + " bits/char, perplexity " + perplexity() + ")";
+    }
+}
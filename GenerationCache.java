@@ -0,0 +1,105 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A bounded cache of generated texts, keyed by their prompt, length and seed
+ *  (see LanguageModel.generate(initialText, textLength, seed)). Its capacity is a
+ *  number of characters, so a few long texts take as much room as many short ones.
+ *  When it is full, the least recently used texts are dropped. Each text is
+ *  stored with the version of the model that generated it: once the model
+ *  changes, the whole cache is dropped. The cache counts its hits and misses,
+ *  and can be used by several threads at once. */
+public class GenerationCache {
+
+    // The texts, least recently used first
+    private final LinkedHashMap<String, String> texts = new LinkedHashMap<String, String>(16, 0.75f, true);
+
+    // The capacity of the cache and the characters it holds (keys and texts)
+    private final long maxChars;
+    private long chars;
+
+    // The version of the model that generated the cached texts
+    private long version = -1;
+
+    // The number of lookups that found their text, and that did not
+    private long hits;
+    private long misses;
+
+    /** Constructs an empty cache that holds at most the given number of characters. */
+    public GenerationCache(long maxChars) {
+        this.maxChars = maxChars;
+    }
+
+    /** Returns the text cached for the given key by the given version of the model,
+     *  or null if there is none. */
+    public synchronized String get(String key, long modelVersion) {
+        if (modelVersion != version) {
+            invalidate(modelVersion);
+        }
+        String text = texts.get(key);
+        if (text == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return text;
+    }
+
+    /** Caches the given text for the given key, generated by the given version of the
+     *  model, and drops the least recently used texts while the cache is too full.
+     *  A text larger than the whole cache is not cached. */
+    public synchronized void put(String key, String text, long modelVersion) {
+        if (modelVersion != version) {
+            invalidate(modelVersion);
+        }
+        long weight = key.length() + text.length();
+        if (weight > maxChars) {
+            return;
+        }
+        String previous = texts.put(key, text);
+        if (previous != null) {
+            chars -= key.length() + previous.length();
+        }
+        chars += weight;
+        Iterator<Map.Entry<String, String>> eldest = texts.entrySet().iterator();
+        while (chars > maxChars) {
+            Map.Entry<String, String> entry = eldest.next();
+            chars -= entry.getKey().length() + entry.getValue().length();
+            eldest.remove();
+        }
+    }
+
+    // Drops all the texts, which were generated by an older version of the model.
+    private void invalidate(long modelVersion) {
+        texts.clear();
+        chars = 0;
+        version = modelVersion;
+    }
+
+    /** Returns the number of lookups that found their text in the cache. */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /** Returns the number of lookups that did not find their text in the cache. */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /** Returns the number of texts in the cache. */
+    public synchronized int size() {
+        return texts.size();
+    }
+
+    /** Returns the number of characters (of keys and texts) in the cache. */
+    public synchronized long chars() {
+        return chars;
+    }
+
+    /** Textual representation of the cache's statistics. */
+    public synchronized String toString() {
+        long lookups = hits + misses;
+        return texts.size() + " texts, " + chars + "/" + maxChars + " chars, " + hits + " hits, " + misses
+            + " misses (" + ((lookups == 0) ? 0 : 100 * hits / lookups) + "% hit rate)";
+    }
+}
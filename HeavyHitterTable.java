@@ -0,0 +1,144 @@
+import java.util.Arrays;
+
+/** A fixed-size table of the most frequent windows of a text stream, each with the
+ *  few characters that most often follow it (its candidates). The table is split
+ *  into small buckets of slots; a window can only be in the bucket of its hash
+ *  code, and a new window takes the place of the least frequent window of its
+ *  bucket only if it has been seen more often (as estimated by the caller, for
+ *  example with a CountMinSketch), so rare windows do not push out frequent ones.
+ *  The candidates of a window are counted with the space-saving algorithm: a
+ *  character that is not a candidate replaces the candidate with the lowest count,
+ *  and takes over its count. Every character that follows the window more often
+ *  than its count divided by the number of candidates is a candidate, and a count
+ *  exceeds the true count by at most that much. */
+public class HeavyHitterTable {
+
+    // The number of slots in a bucket
+    private static final int WAYS = 4;
+
+    // The fingerprint of the window in each slot (the high bits of its hash), and
+    // the number of times it was seen: its estimated count when it took the slot,
+    // plus the number of times it was counted since (0 for an empty slot)
+    private final int[] windows;
+    private final int[] totals;
+
+    // The candidates of each slot (candidates per slot): their characters, and
+    // their counts (0 for a free candidate)
+    private final char[] chars;
+    private final int[] counts;
+    private final int candidates;
+
+    // The number of buckets
+    private final int buckets;
+
+    /** Constructs an empty table with room for at least the given number of windows,
+     *  each with the given number of candidate characters. */
+    public HeavyHitterTable(int capacity, int candidates) {
+        buckets = Math.max(1, (capacity + WAYS - 1) / WAYS);
+        windows = new int[buckets * WAYS];
+        totals = new int[buckets * WAYS];
+        chars = new char[buckets * WAYS * candidates];
+        counts = new int[buckets * WAYS * candidates];
+        this.candidates = candidates;
+    }
+
+    // Returns the first slot of the bucket of the window with the given hash, chosen
+    // by its low bits (its fingerprint is made of its high bits).
+    private int bucket(long window) {
+        return (int) (((window & 0xffffffffL) * buckets) >>> 32) * WAYS;
+    }
+
+    /** Returns the slot of the window with the given hash, or -1 if it is not in the table. */
+    public int find(long window) {
+        int first = bucket(window);
+        for (int slot = first; slot < first + WAYS; slot++) {
+            if (totals[slot] > 0 && windows[slot] == (int) (window >>> 32)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /** Counts one occurrence of the given character after the window with the given
+     *  hash, which has been seen about windowCount times so far. If the window is
+     *  not in the table, it takes an empty slot of its bucket, or the slot of the
+     *  least frequent window of its bucket if windowCount is greater than the
+     *  number of times that window was seen; otherwise it is not counted. */
+    public void add(long window, char chr, long windowCount) {
+        int slot = find(window);
+        if (slot < 0) {
+            int first = bucket(window);
+            slot = first;
+            for (int i = first + 1; i < first + WAYS; i++) {
+                if (totals[i] < totals[slot]) {
+                    slot = i;
+                }
+            }
+            if (totals[slot] > 0 && windowCount <= totals[slot]) {
+                return;
+            }
+            windows[slot] = (int) (window >>> 32);
+            totals[slot] = (int) Math.min(windowCount - 1, Integer.MAX_VALUE - 1);
+            Arrays.fill(counts, slot * candidates, (slot + 1) * candidates, 0);
+        }
+        if (totals[slot] != Integer.MAX_VALUE) {
+            totals[slot]++;
+        }
+        // Counts the character in its candidate or, if it has none, in the candidate
+        // with the lowest count (a free candidate has count 0), which it replaces
+        int from = slot * candidates;
+        int lowest = from;
+        for (int i = from; i < from + candidates; i++) {
+            if (counts[i] > 0 && chars[i] == chr) {
+                lowest = i;
+                break;
+            }
+            if (counts[i] < counts[lowest]) {
+                lowest = i;
+            }
+        }
+        chars[lowest] = chr;
+        if (counts[lowest] != Integer.MAX_VALUE) {
+            counts[lowest]++;
+        }
+    }
+
+    /** Returns a candidate of the given slot, drawn in proportion to the counts of the
+     *  candidates with the given random number (between 0 and 1), or -1 if the slot
+     *  has no candidates. */
+    public int sample(int slot, double r) {
+        int from = slot * candidates;
+        long total = 0;
+        for (int i = from; i < from + candidates; i++) {
+            total += counts[i];
+        }
+        if (total == 0) {
+            return -1;
+        }
+        long n = (long) (r * total);
+        for (int i = from; i < from + candidates; i++) {
+            if (n < counts[i]) {
+                return chars[i];
+            }
+            n -= counts[i];
+        }
+        return -1;
+    }
+
+    /** Returns the number of windows in the table. */
+    public int size() {
+        int size = 0;
+        for (int total : totals) {
+            if (total > 0) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /** Returns the number of bytes used by this table. It does not depend on the
+     *  amount of counted text. */
+    public long sizeInBytes() {
+        return (4L + 4) * windows.length + (2L + 4) * counts.length;
+    }
+}
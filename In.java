@@ -15,6 +15,12 @@ import java.io.InputStream;
 import java.net.URL;
 import java.net.Socket;
 import java.net.URLConnection;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.InputMismatchException;
 import java.util.Locale;
@@ -73,14 +79,18 @@ public final class In {
 
     //// end: section (1 of 2) of code duplicated from In to StdIn.
 
+    // the scanner, created from the reader when a token is first read
     private Scanner scanner;
 
+    // reads characters and lines until a token is read; null once the scanner
+    // has taken over the rest of the input
+    private CharReader reader;
+
    /**
      * Initializes an input stream from standard input.
      */
     public In() {
-        scanner = new Scanner(new BufferedInputStream(System.in), CHARSET_NAME);
-        scanner.useLocale(LOCALE);
+        reader = new CharReader(new BufferedInputStream(System.in));
     }
 
    /**
@@ -94,8 +104,7 @@ public final class In {
         if (socket == null) throw new IllegalArgumentException("socket argument is null");
         try {
             InputStream is = socket.getInputStream();
-            scanner = new Scanner(new BufferedInputStream(is), CHARSET_NAME);
-            scanner.useLocale(LOCALE);
+            reader = new CharReader(is);
         }
         catch (IOException ioe) {
             throw new IllegalArgumentException("Could not open " + socket, ioe);
@@ -114,8 +123,7 @@ public final class In {
         try {
             URLConnection site = url.openConnection();
             InputStream is     = site.getInputStream();
-            scanner            = new Scanner(new BufferedInputStream(is), CHARSET_NAME);
-            scanner.useLocale(LOCALE);
+            reader             = new CharReader(is);
         }
         catch (IOException ioe) {
             throw new IllegalArgumentException("Could not open " + url, ioe);
@@ -132,11 +140,9 @@ public final class In {
     public In(File file) {
         if (file == null) throw new IllegalArgumentException("file argument is null");
         try {
-            // for consistency with StdIn, wrap with BufferedInputStream instead of use
-            // file as argument to Scanner
+            // read the file channel directly into the reader's buffer
             FileInputStream fis = new FileInputStream(file);
-            scanner = new Scanner(new BufferedInputStream(fis), CHARSET_NAME);
-            scanner.useLocale(LOCALE);
+            reader = new CharReader(fis.getChannel());
         }
         catch (IOException ioe) {
             throw new IllegalArgumentException("Could not open " + file, ioe);
@@ -159,11 +165,9 @@ public final class In {
             // first try to read file from local file system
             File file = new File(name);
             if (file.exists()) {
-                // for consistency with StdIn, wrap with BufferedInputStream instead of use
-                // file as argument to Scanner
+                // read the file channel directly into the reader's buffer
                 FileInputStream fis = new FileInputStream(file);
-                scanner = new Scanner(new BufferedInputStream(fis), CHARSET_NAME);
-                scanner.useLocale(LOCALE);
+                reader = new CharReader(fis.getChannel());
                 return;
             }
 
@@ -187,8 +191,7 @@ public final class In {
             // site.addRequestProperty("User-Agent", "Mozilla/4.76");
 
             InputStream is     = site.getInputStream();
-            scanner            = new Scanner(new BufferedInputStream(is), CHARSET_NAME);
-            scanner.useLocale(LOCALE);
+            reader             = new CharReader(is);
         }
         catch (IOException ioe) {
             throw new IllegalArgumentException("Could not open " + name, ioe);
@@ -216,7 +219,18 @@ public final class In {
      * @return {@code true} if this input stream exists; {@code false} otherwise
      */
     public boolean exists()  {
-        return scanner != null;
+        return scanner != null || reader != null;
+    }
+
+    // Returns the scanner, creating it (from the rest of the reader's input) if needed.
+    private Scanner scanner() {
+        if (scanner == null) {
+            scanner = new Scanner(reader);
+            scanner.useLocale(LOCALE);
+            scanner.useDelimiter(WHITESPACE_PATTERN);
+            reader = null;
+        }
+        return scanner;
     }
 
     ////  begin: section (2 of 2) of code duplicated from In to StdIn,
@@ -231,6 +245,7 @@ public final class In {
      *         {@code false} otherwise
      */
     public boolean isEmpty() {
+        if (reader != null) return reader.isBlank();
         return !scanner.hasNext();
     }
 
@@ -244,6 +259,7 @@ public final class In {
      *         {@code false} otherwise
      */
     public boolean hasNextLine() {
+        if (reader != null) return reader.peek() >= 0;
         return scanner.hasNextLine();
     }
 
@@ -256,6 +272,7 @@ public final class In {
      *         {@code false} otherwise
      */
     public boolean hasNextChar() {
+        if (reader != null) return reader.peek() >= 0;
         scanner.useDelimiter(EMPTY_PATTERN);
         boolean result = scanner.hasNext();
         scanner.useDelimiter(WHITESPACE_PATTERN);
@@ -269,6 +286,7 @@ public final class In {
      * @return the next line in this input stream; {@code null} if no such line
      */
     public String readLine() {
+        if (reader != null) return reader.readLine();
         String line;
         try {
             line = scanner.nextLine();
@@ -286,6 +304,14 @@ public final class In {
      * @throws NoSuchElementException if the input stream is empty
      */
     public char readChar() {
+        if (reader != null) {
+            int c = reader.read();
+            if (c < 0) {
+                throw new NoSuchElementException("attempts to read a 'char' value from the input stream, "
+                                               + "but no more tokens are available");
+            }
+            return (char) c;
+        }
         scanner.useDelimiter(EMPTY_PATTERN);
         try {
             String ch = scanner.next();
@@ -307,6 +333,7 @@ public final class In {
      * @return the remainder of this input stream, as a string
      */
     public String readAll() {
+        if (reader != null) return reader.readAll();
         if (!scanner.hasNextLine())
             return "";
 
@@ -325,7 +352,7 @@ public final class In {
      */
     public String readString() {
         try {
-            return scanner.next();
+            return scanner().next();
         }
         catch (NoSuchElementException e) {
             throw new NoSuchElementException("attempts to read a 'String' value from the input stream, "
@@ -343,7 +370,7 @@ public final class In {
      */
     public int readInt() {
         try {
-            return scanner.nextInt();
+            return scanner().nextInt();
         }
         catch (InputMismatchException e) {
             String token = scanner.next();
@@ -366,7 +393,7 @@ public final class In {
      */
     public double readDouble() {
         try {
-            return scanner.nextDouble();
+            return scanner().nextDouble();
         }
         catch (InputMismatchException e) {
             String token = scanner.next();
@@ -389,7 +416,7 @@ public final class In {
      */
     public float readFloat() {
         try {
-            return scanner.nextFloat();
+            return scanner().nextFloat();
         }
         catch (InputMismatchException e) {
             String token = scanner.next();
@@ -412,7 +439,7 @@ public final class In {
      */
     public long readLong() {
         try {
-            return scanner.nextLong();
+            return scanner().nextLong();
         }
         catch (InputMismatchException e) {
             String token = scanner.next();
@@ -435,7 +462,7 @@ public final class In {
      */
     public short readShort() {
         try {
-            return scanner.nextShort();
+            return scanner().nextShort();
         }
         catch (InputMismatchException e) {
             String token = scanner.next();
@@ -460,7 +487,7 @@ public final class In {
      */
     public byte readByte() {
         try {
-            return scanner.nextByte();
+            return scanner().nextByte();
         }
         catch (InputMismatchException e) {
             String token = scanner.next();
@@ -538,11 +565,7 @@ public final class In {
      * @return all remaining lines in this input stream, as an array of integers
      */
     public int[] readAllInts() {
-        String[] fields = readAllStrings();
-        int[] vals = new int[fields.length];
-        for (int i = 0; i < fields.length; i++)
-            vals[i] = Integer.parseInt(fields[i]);
-        return vals;
+        return NumberParser.parseInts(readAllChars());
     }
 
     /**
@@ -552,11 +575,7 @@ public final class In {
      * @return all remaining lines in this input stream, as an array of longs
      */
     public long[] readAllLongs() {
-        String[] fields = readAllStrings();
-        long[] vals = new long[fields.length];
-        for (int i = 0; i < fields.length; i++)
-            vals[i] = Long.parseLong(fields[i]);
-        return vals;
+        return NumberParser.parseLongs(readAllChars());
     }
 
     /**
@@ -566,11 +585,7 @@ public final class In {
      * @return all remaining lines in this input stream, as an array of doubles
      */
     public double[] readAllDoubles() {
-        String[] fields = readAllStrings();
-        double[] vals = new double[fields.length];
-        for (int i = 0; i < fields.length; i++)
-            vals[i] = Double.parseDouble(fields[i]);
-        return vals;
+        return NumberParser.parseDoubles(readAllChars());
     }
 
     ///// end: section (2 of 2) of code duplicated from In to StdIn */
@@ -579,7 +594,72 @@ public final class In {
      * Closes this input stream.
      */
     public void close() {
-        scanner.close();
+        if (reader != null) reader.close();
+        else scanner.close();
+    }
+
+   /**
+     * Reads and returns the remainder of this input stream, as a sequence of
+     * characters. Unlike {@link #readAll()}, the characters are not copied into
+     * a new string: the sequence is a view of the buffer they were decoded into.
+     *
+     * @return the remainder of this input stream, as a sequence of characters
+     */
+    public CharSequence readAllChars() {
+        if (reader != null) return reader.readAllChars();
+        return readAll();
+    }
+
+   /**
+     * Returns the contents of a file as a sequence of characters, read through
+     * a memory map. If the file is all ASCII, the sequence is a view of the
+     * mapped bytes and nothing is copied; otherwise the file is decoded from
+     * UTF-8 (into a buffer of the file's length) in one pass.
+     *
+     * @param  filename the name of the file
+     * @return the characters of the file
+     * @throws IllegalArgumentException if cannot open {@code filename}
+     */
+    public static CharSequence map(String filename) {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            for (int i = 0; i < bytes.limit(); i++) {
+                if (bytes.get(i) < 0) {
+                    return StandardCharsets.UTF_8.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                        .decode(bytes);
+                }
+            }
+            return new ByteCharSequence(bytes);
+        }
+        catch (IOException ioe) {
+            throw new IllegalArgumentException("Could not open " + filename, ioe);
+        }
+    }
+
+   /**
+     * Returns an iterator over the lines of the given text, which reuses one view
+     * of the text for all the lines instead of creating a string per line.
+     * Lines end as in {@link #readLine()}.
+     *
+     * @param  text the text
+     * @return an iterator over the lines of {@code text}
+     */
+    public static SpanIterator lines(CharSequence text) {
+        return new SpanIterator(text, false);
+    }
+
+   /**
+     * Returns an iterator over the whitespace-separated tokens of the given text,
+     * which reuses one view of the text for all the tokens instead of creating a
+     * string per token.
+     *
+     * @param  text the text
+     * @return an iterator over the tokens of {@code text}
+     */
+    public static SpanIterator tokens(CharSequence text) {
+        return new SpanIterator(text, true);
     }
 
     /**
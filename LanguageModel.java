@@ -1,5 +1,28 @@
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 public class LanguageModel {
 
@@ -13,6 +36,76 @@ public class LanguageModel {
     // The random number generator used by this model. 
     private Random randomGenerator;
 
+    // The smoothing method of this model, and its parameter (k or the discount).
+    private Smoothing smoothing = Smoothing.NONE;
+    private double smoothingParameter;
+
+    // The smoothed distributions of the shorter windows, indexed by window length
+    // (the last one is CharDataMap itself). Null if the model is not smoothed.
+    private ArrayList<HashMap<String, List>> backoffMaps;
+
+    // The windows counted by concurrent producers (see addSegment), split by hash
+    // code into stripes that are each guarded by their own lock. freeze moves them
+    // into CharDataMap.
+    private static final int STRIPES = 64;
+    private final ArrayList<HashMap<String, List>> stripes = new ArrayList<HashMap<String, List>>();
+
+    // True if the lists of this model are kept sorted by decreasing count.
+    private boolean frequencyOrdered;
+
+    // True if train counts into an arena (see setArenaTraining), and the arena of the
+    // current training run (null once its windows are moved into CharDataMap)
+    private boolean arenaTraining;
+    private CountArena arena;
+
+    // The number of bits used to store probabilities (0 = full precision).
+    private int quantizationBits;
+
+    // The total pseudo-count that each window of each model contributes to an
+    // interpolated model, before weighting (the weights are scaled to sum to 1).
+    private static final int INTERPOLATION_SCALE = 1 << 20;
+
+    // The size (in chars) and number of the chunks that training reads ahead
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final int PREFETCH_CHUNKS = 4;
+
+    // True if freeze compiles the lists of CharDataMap into a table for generate
+    // (see setCompiledGeneration)
+    private boolean compiledGeneration;
+
+    // The windows and lists of CharDataMap, compiled by freeze for generate (null if
+    // compiled generation is off, the model is smoothed, or it has a dense table).
+    // If CharDataMap is changed directly, call freeze again.
+    private WindowTable windowTable;
+
+    // The lists of CharDataMap in a table indexed by the windows themselves, compiled
+    // by freeze for short windows over a small alphabet (null otherwise)
+    private DenseTransitionTable denseTable;
+
+    // True if generate draws a random number for every character, even for windows
+    // that have a single possible successor (see setSeedCompatible)
+    private boolean seedCompatible = true;
+
+    // The number of changes made to this model (each freeze counts one), and the cache
+    // of seeded texts, which are valid only for the version they were generated from
+    private volatile long version;
+    private volatile GenerationCache generationCache;
+
+    // The throughput of each file of the last multi-file training (see trainingReport)
+    private String trainingReport = "";
+
+    // The number of windows that dump formats in one task
+    private static final int DUMP_CHUNK_SIZE = 4096;
+
+    // One reusable list iterator per thread, for the loops that run once per list
+    // (while freezing) or once per generated character
+    private static final ThreadLocal<ListIterator> ITERATORS = ThreadLocal.withInitial(() -> new ListIterator(null));
+
+    // Rough heap costs (in bytes) of the objects that make up a trained model:
+    // a HashMap entry + String + List per context, a Node + CharData per character.
+    private static final int CONTEXT_BYTES = 32 + 24 + 16 + 24;
+    private static final int CHAR_BYTES = 24 + 40;
+
     /** Constructs a language model with the given window length and a given
      * seed value. Generating texts from this model multiple times with the 
      * same seed value will produce the same random texts. Good for debugging. */
@@ -20,6 +113,7 @@ public class LanguageModel {
         this.windowLength = windowLength;
         randomGenerator = new Random(seed);
         CharDataMap = new HashMap<String, List>();
+        initStripes();
     }
 
     /** Constructs a language model with the given window length.
@@ -29,76 +123,731 @@ public class LanguageModel {
         this.windowLength = windowLength;
         randomGenerator = new Random();
         CharDataMap = new HashMap<String, List>();
+        initStripes();
     }
 
-    /** Builds a language model from the text in the given file (the corpus). */
+    // Creates the (empty) stripes used for concurrent training.
+    private void initStripes() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes.add(new HashMap<String, List>());
+        }
+    }
+
+    /** Builds a language model from the text in the given file (the corpus).
+     *  A file whose name ends with .gz is decompressed as it is read, on the
+     *  thread that reads ahead (and, for a bgzip file, its members in parallel).
+     *  If the name is a directory, the model is built from all the files under
+     *  it; if it is a glob pattern (such as corpus/*.txt or corpus/**.gz) and not the
+     *  name of an existing file, from all the files that match it (see
+     *  train(String[])). A directory or pattern without any files is an error. */
     public void train(String fileName) {
-        String text = "";
         try {
-            java.nio.file.Path path = java.nio.file.Paths.get(fileName);
-            text = new String(java.nio.file.Files.readAllBytes(path));
+            if (!isRegularFile(fileName) && (isGlob(fileName) || Files.isDirectory(Paths.get(fileName)))) {
+                train(corpusFiles(fileName));
+                return;
+            }
+            try (CharReader reader = open(fileName)) {
+                train(reader);
+            }
         } catch (Exception e) {
             e.printStackTrace();
-            return;
         }
+    }
+
+    /** Builds a language model from the text in the given files (the corpus), which
+     *  are read in parallel, each by its own worker. Windows do not span files.
+     *  The counts of the files are added in the given order, so the model does not
+     *  depend on which worker finishes first. A file that cannot be read is
+     *  reported and skipped. The throughput of each file is kept in trainingReport. */
+    public void train(String[] fileNames) {
+        StringBuilder report = new StringBuilder();
+        long start = System.nanoTime();
+        long[] total = new long[1];
+        IntStream.range(0, fileNames.length).parallel()
+            .mapToObj(i -> countFile(fileNames[i]))
+            .forEachOrdered(file -> {
+                if (file.error != null) {
+                    System.err.println("Cannot train on " + file.fileName + ": " + file.error);
+                    report.append(String.format("%-40s failed: %s%n", file.fileName, file.error));
+                    return;
+                }
+                addCounts(file.counts);
+                total[0] += file.chars;
+                report.append(reportLine(file.fileName, file.chars, file.nanos));
+            });
+        report.append(reportLine("total (" + fileNames.length + " files)", total[0], System.nanoTime() - start));
+        trainingReport = report.toString();
+        freeze();
+    }
+
+    /** Returns the number of characters read from each file by the last multi-file
+     *  training, the time taken, and the throughput. */
+    public String trainingReport() {
+        return trainingReport;
+    }
+
+    // Returns a line of the training report.
+    private static String reportLine(String name, long chars, long nanos) {
+        double seconds = nanos / 1e9;
+        return String.format("%-40s %12d chars %8.3f s %8.1f Mchars/s%n", name, chars, seconds, chars / seconds / 1e6);
+    }
+
+    // The windows counted from one file, or the exception that stopped it
+    private static class FileCounts {
+        String fileName;
+        HashMap<String, List> counts = new HashMap<String, List>();
+        long chars;
+        long nanos;
+        IOException error;
+    }
 
-        for (int i = 0; i <= text.length() - windowLength - 1; i++) {
-            String window = text.substring(i, i + windowLength);
+    // Counts the windows of the given file into a map of its own.
+    private FileCounts countFile(String fileName) {
+        FileCounts file = new FileCounts();
+        file.fileName = fileName;
+        long start = System.nanoTime();
+        try (CharReader reader = open(fileName)) {
+            file.chars = countStream(reader, file.counts);
+        } catch (IOException e) {
+            file.error = e;
+        }
+        file.nanos = System.nanoTime() - start;
+        return file;
+    }
+
+    // Returns a reader of the given file, which is decompressed if its name ends with .gz.
+    static CharReader open(String fileName) throws IOException {
+        if (fileName.endsWith(".gz")) {
+            return new CharReader(ParallelGzipInputStream.open(fileName));
+        }
+        return new CharReader(FileChannel.open(Paths.get(fileName), StandardOpenOption.READ));
+    }
+
+    // Returns true if the given file name is the name of an existing regular file.
+    private static boolean isRegularFile(String fileName) {
+        try {
+            return Files.isRegularFile(Paths.get(fileName));
+        } catch (InvalidPathException e) {
+            return false;
+        }
+    }
+
+    // Returns true if the given file name is a glob pattern.
+    private static boolean isGlob(String fileName) {
+        for (char c : "*?[{".toCharArray()) {
+            if (fileName.indexOf(c) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Returns the regular files under the given directory, or that match the given
+    // glob pattern, in sorted order. Throws an IOException if there are none.
+    private static String[] corpusFiles(String fileName) throws IOException {
+        Path root;
+        PathMatcher matcher;
+        if (isGlob(fileName)) {
+            // Walks the longest directory of the pattern that has no glob characters
+            int end = fileName.length();
+            for (char c : "*?[{".toCharArray()) {
+                int i = fileName.indexOf(c);
+                if (i >= 0) {
+                    end = Math.min(end, i);
+                }
+            }
+            int slash = fileName.lastIndexOf('/', end);
+            root = Paths.get((slash < 0) ? "." : (slash == 0) ? "/" : fileName.substring(0, slash));
+            String pattern = (slash < 0) ? "./" + fileName : fileName;
+            matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        } else {
+            root = Paths.get(fileName);
+            matcher = path -> true;
+        }
+        String[] files;
+        try (Stream<Path> paths = Files.walk(root)) {
+            files = paths.filter(Files::isRegularFile)
+                         .filter(matcher::matches)
+                         .map(Path::toString)
+                         .sorted()
+                         .toArray(String[]::new);
+        }
+        if (files.length == 0) {
+            throw new IOException("no files to train on in " + fileName);
+        }
+        return files;
+    }
+
+    /** Builds a language model from the characters read from the given source (the
+     *  corpus). The source is read (and decoded) ahead on a separate thread, into a
+     *  small ring of chunks, while the windows of the current chunk are counted. */
+    public void train(Readable source) throws IOException {
+        countStream(source, CharDataMap);
+        freeze();
+    }
+
+    // Counts the windows of the characters read from the given source into the given
+    // map, reading ahead on a separate thread. Returns the number of characters read.
+    private long countStream(Readable source, HashMap<String, List> counts) throws IOException {
+        WindowKey window = new WindowKey(windowLength);
+        long chars = 0;
+        // The last windowLength characters of the previous chunks
+        char[] carry = new char[windowLength];
+        int carried = 0;
+        try (PrefetchReader chunks = new PrefetchReader(source, CHUNK_SIZE, PREFETCH_CHUNKS)) {
+            CharBuffer chunk;
+            while ((chunk = chunks.next()) != null) {
+                chars += chunk.length();
+                // The windows that start in the carried characters and end in this chunk
+                int head = Math.min(windowLength, chunk.length());
+                CharBuffer joined = CharBuffer.allocate(carried + head);
+                joined.put(carry, 0, carried).put(chunk.subSequence(0, head)).flip();
+                countWindows(joined, Math.min(carried, joined.length() - windowLength), window, counts);
+                // The windows that start in this chunk
+                countWindows(chunk, chunk.length() - windowLength, window, counts);
+                if (chunk.length() >= windowLength) {
+                    chunk.position(chunk.limit() - windowLength);
+                    chunk.get(carry);
+                    carried = windowLength;
+                } else {
+                    joined.position(joined.length() - Math.min(windowLength, joined.length()));
+                    carried = joined.remaining();
+                    joined.get(carry, 0, carried);
+                }
+                chunks.release(chunk);
+            }
+        }
+        return chars;
+    }
+
+    /** Builds a language model from the given text (the corpus), which can be any
+     *  sequence of characters: a String, a buffer, or a view of a mapped file. */
+    public void trainText(CharSequence text) {
+        countWindows(text, text.length() - windowLength, new WindowKey(windowLength), CharDataMap);
+        freeze();
+    }
+
+    // Counts the windows that start at positions 0 to end - 1 of the given text into
+    // the given map, using the given (reusable) window key.
+    private void countWindows(CharSequence text, int end, WindowKey window, HashMap<String, List> counts) {
+        if (arenaTraining && !frequencyOrdered && counts == CharDataMap) {
+            if (arena == null) {
+                arena = new CountArena(windowLength);
+            }
+            for (int i = 0; i < end; i++) {
+                arena.add(text, i, text.charAt(i + windowLength));
+            }
+            return;
+        }
+        for (int i = 0; i < end; i++) {
+            window.set(text, i);
             char nextChar = text.charAt(i + windowLength);
 
-            List probs = CharDataMap.get(window);
+            List probs = counts.get(window);
             if (probs == null) {
-                probs = new List();
-                CharDataMap.put(window, probs);
+                probs = newList();
+                counts.put(window.toString(), probs);
             }
             probs.update(nextChar);
         }
+    }
+
+    /** Counts the windows of the given text segment. Unlike train, this method can be
+     *  called by many threads at once: each window is counted under the lock of its
+     *  stripe only, so producers that feed different segments rarely wait for each
+     *  other. Windows do not span segments. Once all the segments have been added,
+     *  call freeze to compute the probabilities. */
+    public void addSegment(CharSequence segment) {
+        WindowKey window = new WindowKey(windowLength);
+        for (int i = 0; i <= segment.length() - windowLength - 1; i++) {
+            window.set(segment, i);
+            char nextChar = segment.charAt(i + windowLength);
+            int hash = window.hashCode();
+            HashMap<String, List> stripe = stripes.get((hash ^ (hash >>> 16)) & (STRIPES - 1));
+            synchronized (stripe) {
+                List probs = stripe.get(window);
+                if (probs == null) {
+                    probs = newList();
+                    stripe.put(window.toString(), probs);
+                }
+                probs.update(nextChar);
+            }
+        }
+    }
 
+    // Moves the windows counted by addSegment into CharDataMap.
+    private void drainStripes() {
+        for (HashMap<String, List> stripe : stripes) {
+            synchronized (stripe) {
+                addCounts(stripe);
+                stripe.clear();
+            }
+        }
+    }
+
+    // Adds the given window counts to CharDataMap (taking over the lists of new windows).
+    private void addCounts(HashMap<String, List> counts) {
+        for (Map.Entry<String, List> entry : counts.entrySet()) {
+            List probs = CharDataMap.get(entry.getKey());
+            if (probs == null) {
+                CharDataMap.put(entry.getKey(), entry.getValue());
+            } else {
+                probs.addAll(entry.getValue());
+            }
+        }
+    }
+
+    /** Sets the order of the characters in the lists of this model. By default, a new
+     *  character is added to the front of its list, as List.update does. If the
+     *  lists are frequency-ordered, they are kept sorted by decreasing count, so
+     *  training and generation find the most frequent characters first; generated
+     *  texts then differ from those of the default order (for the same seed). */
+    public void setFrequencyOrdered(boolean frequencyOrdered) {
+        drainArena();
+        this.frequencyOrdered = frequencyOrdered;
+        drainStripes();
         for (List probs : CharDataMap.values()) {
-            calculateProbabilities(probs);
+            probs.setFrequencyOrdered(frequencyOrdered);
         }
+        freeze();
+    }
+
+    /** Sets whether train counts the windows of the corpus in an arena: a few large
+     *  primitive arrays (see CountArena) instead of a String, a List, and a Node and
+     *  a CharData per character. The lists are built once, when training ends, in
+     *  the same order as without the arena, so the model is the same. The arena is
+     *  released once its windows are moved into the lists, so a trained model holds
+     *  only the lists; each training run counts into a new arena.
+     *  Multi-file training counts each file in a map of its own, as before. A
+     *  frequency-ordered model does not count in the arena: the order of its equal
+     *  counts depends on the order of the updates, which the arena does not keep. */
+    public void setArenaTraining(boolean arenaTraining) {
+        drainArena();
+        this.arenaTraining = arenaTraining;
+    }
+
+    /** Removes all the windows of this model, so it can be trained again from scratch. */
+    public void clear() {
+        drainStripes();
+        arena = null;
+        CharDataMap = new HashMap<String, List>();
+        freeze();
+    }
+
+    // Moves the windows counted in the arena into CharDataMap, and releases the arena.
+    private void drainArena() {
+        if (arena != null) {
+            arena.addTo(CharDataMap, frequencyOrdered);
+            arena = null;
+        }
+    }
+
+    // Returns a new, empty list in the order used by this model.
+    private List newList() {
+        return new List(frequencyOrdered);
+    }
+
+    /** Computes the probabilities of all the windows of this model from their counts,
+     *  and, if the model is smoothed, the distributions of the shorter windows it backs
+     *  off to. This is done once after training (train calls it), so generating a
+     *  character costs the same with or without smoothing. */
+    public void freeze() {
+        version++;
+        drainArena();
+        drainStripes();
+        windowTable = null;
+        denseTable = null;
+        if (smoothing == Smoothing.NONE) {
+            backoffMaps = null;
+            CharDataMap.values().parallelStream().forEach(this::calculateProbabilities);
+            if (compiledGeneration) {
+                // generate prefers the dense table, so the window table is only built without one
+                denseTable = DenseTransitionTable.build(CharDataMap, windowLength, quantizationBits);
+                if (denseTable == null) {
+                    windowTable = new WindowTable(CharDataMap, windowLength, quantizationBits);
+                }
+            }
+            return;
+        }
+        ArrayList<HashMap<String, List>> maps = new ArrayList<HashMap<String, List>>();
+        for (int i = 0; i < windowLength; i++) {
+            maps.add(null);
+        }
+        maps.add(CharDataMap);
+        if (smoothing == Smoothing.ADD_K) {
+            // Every character of the vocabulary gets k more occurrences: the model
+            // interpolates with the uniform distribution over the vocabulary.
+            List uniform = vocabulary();
+            calculateProbabilities(uniform);
+            HashMap<String, List> unigrams = new HashMap<String, List>();
+            unigrams.put("", uniform);
+            maps.set(0, unigrams);
+            int vocabularySize = uniform.getSize();
+            CharDataMap.values().parallelStream().forEach(probs ->
+                discount(probs, 0, smoothingParameter * vocabularySize));
+        } else {
+            // Each shorter window gets the counts of the windows that extend it
+            // (Kneser-Ney: the number of distinct windows each character follows).
+            for (int length = windowLength - 1; length >= 0; length--) {
+                maps.set(length, lowerOrder(maps.get(length + 1)));
+            }
+            // The empty window keeps its maximum-likelihood probabilities.
+            maps.get(0).values().forEach(this::calculateProbabilities);
+            for (int length = 1; length <= windowLength; length++) {
+                maps.get(length).values().parallelStream().forEach(probs ->
+                    discount(probs, smoothingParameter, 0));
+            }
+        }
+        backoffMaps = maps;
+    }
+
+    // Returns a list of every character that follows a window of this model, once,
+    // as adding each new character with addFirst while iterating over the windows
+    // would (the last character met first). The windows are scanned in parallel
+    // chunks, whose characters are then combined in the order of the chunks.
+    private List vocabulary() {
+        ArrayList<List> lists = new ArrayList<List>(CharDataMap.values());
+        int chunks = Math.max(1, Math.min(lists.size() / 1024, 4 * Runtime.getRuntime().availableProcessors()));
+        ArrayList<LinkedHashSet<Character>> seen = IntStream.range(0, chunks).parallel()
+            .mapToObj(c -> {
+                LinkedHashSet<Character> chars = new LinkedHashSet<Character>();
+                for (int i = (int) ((long) lists.size() * c / chunks); i < (long) lists.size() * (c + 1) / chunks; i++) {
+                    lists.get(i).forEachChar((chr, count) -> chars.add(chr));
+                }
+                return chars;
+            })
+            .collect(Collectors.toCollection(ArrayList::new));
+        LinkedHashSet<Character> vocabulary = new LinkedHashSet<Character>();
+        for (LinkedHashSet<Character> chars : seen) {
+            vocabulary.addAll(chars);
+        }
+        List uniform = new List();
+        for (char chr : vocabulary) {
+            uniform.addFirst(chr);
+        }
+        return uniform;
+    }
+
+    // Returns the windows one character shorter than those of the given map, each
+    // with the counts of the windows that extend it (Kneser-Ney: the number of
+    // distinct windows each character follows). The windows are split by suffix
+    // into shards that are counted in parallel. Each shard adds its counts in the
+    // order of the given map, and the new windows are put in the order they are
+    // first met, so the result is the same as counting the whole map in one pass.
+    private HashMap<String, List> lowerOrder(HashMap<String, List> higher) {
+        ArrayList<Map.Entry<String, List>> entries = new ArrayList<Map.Entry<String, List>>(higher.entrySet());
+        String[] suffixes = entries.parallelStream().map(entry -> entry.getKey().substring(1)).toArray(String[]::new);
+        // The entries of each shard, in order (a counting sort by shard)
+        int shards = 4 * Runtime.getRuntime().availableProcessors();
+        int[] starts = new int[shards + 1];
+        int[] shardOf = new int[suffixes.length];
+        for (int i = 0; i < suffixes.length; i++) {
+            shardOf[i] = Math.floorMod(suffixes[i].hashCode(), shards);
+            starts[shardOf[i] + 1]++;
+        }
+        for (int shard = 0; shard < shards; shard++) {
+            starts[shard + 1] += starts[shard];
+        }
+        int[] order = new int[suffixes.length];
+        int[] next = Arrays.copyOf(starts, shards);
+        for (int i = 0; i < suffixes.length; i++) {
+            order[next[shardOf[i]]++] = i;
+        }
+        // The list of each new window, at the position of the entry that created it
+        List[] created = new List[suffixes.length];
+        boolean continuationCounts = smoothing == Smoothing.KNESER_NEY;
+        IntStream.range(0, shards).parallel().forEach(shard -> {
+            HashMap<String, List> lists = new HashMap<String, List>();
+            for (int k = starts[shard]; k < starts[shard + 1]; k++) {
+                int i = order[k];
+                List probs = lists.get(suffixes[i]);
+                if (probs == null) {
+                    probs = newList();
+                    lists.put(suffixes[i], probs);
+                    created[i] = probs;
+                }
+                List lowerProbs = probs;
+                entries.get(i).getValue().forEachChar((chr, count) ->
+                    lowerProbs.update(chr, continuationCounts ? 1 : count));
+            }
+        });
+        HashMap<String, List> lower = new HashMap<String, List>();
+        for (int i = 0; i < created.length; i++) {
+            if (created[i] != null) {
+                lower.put(suffixes[i], created[i]);
+            }
+        }
+        return lower;
+    }
+
+    // Computes the discounted probabilities of the characters in the given list:
+    // p = (count - discount) / (total + extra). The remaining probability mass,
+    // 1 - cp of the last character, is left to the shorter window.
+    private void discount(List probs, double discount, double extra) {
+        if (probs.getSize() == 0) return;
+        double total = probs.totalCount() + extra;
+        double cumulativeProbability = 0.0;
+        ListIterator itr = probs.listIterator(0, ITERATORS.get());
+        while (itr.hasNext()) {
+            CharData current = itr.next();
+            current.p = Math.max(current.count - discount, 0) / total;
+            cumulativeProbability += current.p;
+            current.cp = cumulativeProbability;
+        }
+        if (quantizationBits > 0) {
+            quantize(probs);
+        }
+    }
+
+    /** Sets the smoothing method of this model and its parameter: k for ADD_K, or
+     *  the discount (between 0 and 1) for ABSOLUTE_DISCOUNTING and KNESER_NEY.
+     *  The probabilities of a trained model are recomputed. */
+    public void setSmoothing(Smoothing smoothing, double parameter) {
+        if (smoothing != Smoothing.NONE && smoothing != Smoothing.ADD_K && (parameter <= 0 || parameter > 1)) {
+            throw new IllegalArgumentException("discount must be between 0 and 1, got " + parameter);
+        }
+        if (smoothing == Smoothing.ADD_K && parameter <= 0) {
+            throw new IllegalArgumentException("k must be positive, got " + parameter);
+        }
+        this.smoothing = smoothing;
+        smoothingParameter = parameter;
+        freeze();
     }
 
     // Computes and sets the probabilities (p and cp fields) of all the
     // characters in the given list. */
     void calculateProbabilities(List probs) {               
-        int totalChars = 0;
-        
         // If list is empty, avoid crash
         if (probs.getSize() == 0) return;
 
-        ListIterator itr = probs.listIterator(0);
-        while (itr.hasNext()) {
-            CharData current = itr.next();
-            totalChars += current.count;
-        }
-
+        long totalChars = probs.totalCount();
         double cumulativeProbability = 0.0;
-        itr = probs.listIterator(0);
+        ListIterator itr = probs.listIterator(0, ITERATORS.get());
         while (itr.hasNext()) {
             CharData current = itr.next();
             current.p = (double) current.count / totalChars;
             cumulativeProbability += current.p;
             current.cp = cumulativeProbability;
         }
+        if (quantizationBits > 0) {
+            quantize(probs);
+        }
+    }
+
+    // Rounds the cumulative probabilities of the given list to the nearest of
+    // 2^quantizationBits levels, and derives the p fields from them.
+    private void quantize(List probs) {
+        int levels = (1 << quantizationBits) - 1;
+        double previous = 0.0;
+        ListIterator itr = probs.listIterator(0, ITERATORS.get());
+        while (itr.hasNext()) {
+            CharData current = itr.next();
+            current.cp = Math.round(current.cp * levels) / (double) levels;
+            current.p = current.cp - previous;
+            previous = current.cp;
+        }
+    }
+
+    /** Sets the number of bits of the probabilities of this model: 8 or 16 for
+     *  quantized probabilities, or 0 for full precision. The probabilities of a
+     *  trained model are recomputed and rounded. The lists of CharDataMap keep
+     *  their counts and store the rounded probabilities in doubles, so quantizing
+     *  does not make them smaller: only the compiled table (see
+     *  setCompiledGeneration) stores a quantized probability in a byte or a short
+     *  instead of a double, which saves 6 or 7 bytes per character of the table
+     *  (see tableSize). */
+    public void setQuantization(int bits) {
+        if (bits != 0 && bits != 8 && bits != 16) {
+            throw new IllegalArgumentException("quantization must be 0, 8 or 16 bits, got " + bits);
+        }
+        quantizationBits = bits;
+        freeze();
+    }
+
+    /** Removes from this model every character seen fewer than minCharCount times
+     *  after its window, and then every window seen fewer than minContextCount times
+     *  (or left without characters). The probabilities are recomputed. */
+    public void prune(int minContextCount, int minCharCount) {
+        Iterator<Map.Entry<String, List>> entries = CharDataMap.entrySet().iterator();
+        while (entries.hasNext()) {
+            List probs = entries.next().getValue();
+            if (minCharCount > 1) {
+                for (CharData cd : probs.toArray()) {
+                    if (cd.count < minCharCount) {
+                        probs.remove(cd.chr);
+                    }
+                }
+            }
+            if (probs.getSize() == 0 || probs.totalCount() < minContextCount) {
+                entries.remove();
+            }
+        }
+        freeze();
+    }
+
+    /** Returns an estimate of the number of bytes this model occupies on the heap:
+     *  its windows and lists, and the table compiled from them for generate, if
+     *  compiled generation is on (see setCompiledGeneration). */
+    public long estimatedSize() {
+        long bytes = tableSize();
+        for (Map.Entry<String, List> entry : CharDataMap.entrySet()) {
+            bytes += entryBytes(entry);
+        }
+        return bytes;
+    }
+
+    /** Returns an estimate of the number of bytes that the table compiled for
+     *  generate occupies on the heap (0 if compiled generation is off). This is the
+     *  part of estimatedSize that quantization reduces. */
+    public long tableSize() {
+        if (windowTable != null) {
+            return windowTable.estimatedSize();
+        }
+        if (denseTable != null) {
+            return denseTable.estimatedSize();
+        }
+        return 0;
+    }
+
+    // Returns the rough heap cost of the given window and its list in CharDataMap.
+    private static long entryBytes(Map.Entry<String, List> entry) {
+        return CONTEXT_BYTES + entry.getKey().length() + (long) CHAR_BYTES * entry.getValue().getSize();
+    }
+
+    // Returns the rough heap cost of the tables that freeze would compile for the
+    // given number of windows and characters. A dense table does not grow when
+    // windows are removed, so its current size bounds the size of the next one.
+    private long compiledSize(int windows, long chars) {
+        if (!compiledGeneration || smoothing != Smoothing.NONE) {
+            return 0;
+        }
+        if (denseTable != null) {
+            return denseTable.estimatedSize();
+        }
+        return WindowTable.estimatedSize(windows, chars, windowLength, quantizationBits);
+    }
+
+    /** Prunes the windows with the lowest counts from this model, until its
+     *  estimated size (see estimatedSize) is at most the given number of bytes.
+     *  The compiled tables shrink with the windows, and are counted as they will
+     *  be after pruning. Returns the number of windows that were removed. */
+    public int pruneToBudget(long maxBytes) {
+        if (estimatedSize() <= maxBytes) {
+            return 0;
+        }
+        ArrayList<Map.Entry<String, List>> entries = new ArrayList<Map.Entry<String, List>>(CharDataMap.entrySet());
+        long[] totals = new long[entries.size()];
+        Integer[] order = new Integer[entries.size()];
+        long mapBytes = 0;
+        long chars = 0;
+        for (int i = 0; i < totals.length; i++) {
+            totals[i] = entries.get(i).getValue().totalCount();
+            order[i] = i;
+            mapBytes += entryBytes(entries.get(i));
+            chars += entries.get(i).getValue().getSize();
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(totals[a], totals[b]));
+        int removed = 0;
+        while (removed < order.length && mapBytes + compiledSize(order.length - removed, chars) > maxBytes) {
+            Map.Entry<String, List> entry = entries.get(order[removed]);
+            mapBytes -= entryBytes(entry);
+            chars -= entry.getValue().getSize();
+            CharDataMap.remove(entry.getKey());
+            removed++;
+        }
+        freeze();
+        return removed;
     }
 
     // Returns a random character from the given probabilities list.
     char getRandomChar(List probs) {
-        double r = randomGenerator.nextDouble();
+        return getRandomChar(probs, randomGenerator);
+    }
+
+    // Returns a random character from the given probabilities list, drawn with the
+    // given random number generator.
+    private char getRandomChar(List probs, Random random) {
+        double r = random.nextDouble();
         
         // Safety check for empty list
         if (probs.getSize() == 0) return ' ';
 
-        ListIterator itr = probs.listIterator(0);
+        return getCharAt(probs, r);
+    }
+
+    // Returns a random character that follows the last window of the given text in
+    // the smoothed model, using one reusable window key per window length.
+    // A single random number picks either a character seen after the window, or
+    // (rescaled into the remaining mass) a character of the next shorter window.
+    private char getSmoothedChar(CharSequence text, WindowKey[] keys, Random random) {
+        double r = random.nextDouble();
+        for (int length = windowLength; length >= 0; length--) {
+            HashMap<String, List> map = backoffMaps.get(length);
+            List probs = (map == null) ? null : map.get(keys[length].set(text, text.length() - length));
+            if (probs == null || probs.getSize() == 0) {
+                continue;
+            }
+            double seen = probs.getLast().cp;
+            if (r < seen || length == 0) {
+                return getCharAt(probs, r);
+            }
+            r = (r - seen) / (1 - seen);
+        }
+        return ' ';
+    }
+
+    // Returns the first character in the given list whose cp is greater than r
+    // (or the last character, if there is no such character).
+    char getCharAt(List probs, double r) {
+        ListIterator itr = probs.listIterator(0, ITERATORS.get());
         while (itr.hasNext()) {
             CharData current = itr.next();
             if (r < current.cp) {
                 return current.chr;
             }
         }
-        // Fallback
-        return probs.get(probs.getSize() - 1).chr;
+        return probs.getLast().chr;
+    }
+
+    // Returns an array of window keys, one for each window length up to windowLength.
+    private WindowKey[] windowKeys() {
+        WindowKey[] keys = new WindowKey[windowLength + 1];
+        for (int length = 0; length <= windowLength; length++) {
+            keys[length] = new WindowKey(length);
+        }
+        return keys;
+    }
+
+    // Returns the probability of the given character following the last window of
+    // the given text (smoothed, if the model is smoothed).
+    double probability(CharSequence text, char chr) {
+        return probability(text, text.length(), chr, windowKeys());
+    }
+
+    // Returns the probability of the given character following the window that
+    // ends at the given position of the given text. The keys hold one reusable
+    // window key per window length.
+    private double probability(CharSequence text, int end, char chr, WindowKey[] keys) {
+        if (backoffMaps == null) {
+            List probs = CharDataMap.get(keys[windowLength].set(text, end - windowLength));
+            CharData cd = (probs == null) ? null : probs.find(chr);
+            return (cd == null) ? 0.0 : cd.p;
+        }
+        double p = 0.0;
+        double weight = 1.0;
+        for (int length = windowLength; length >= 0; length--) {
+            HashMap<String, List> map = backoffMaps.get(length);
+            List probs = (map == null) ? null : map.get(keys[length].set(text, end - length));
+            if (probs == null || probs.getSize() == 0) {
+                continue;
+            }
+            CharData cd = probs.find(chr);
+            if (cd != null) {
+                p += weight * cd.p;
+            }
+            weight *= 1 - probs.getLast().cp;
+        }
+        return p;
     }
 
     /**
@@ -108,14 +857,50 @@ public class LanguageModel {
      * @return the generated text
      */
     public String generate(String initialText, int textLength) {
+        return generate(initialText, textLength, randomGenerator);
+    }
+
+    /** Generates a random text, as generate(initialText, textLength) does, but with
+     *  a random number generator of its own, created with the given seed: the same
+     *  arguments always give the same text, and calls can run concurrently. If the
+     *  generation cache is on (see setGenerationCache), the text is taken from the
+     *  cache when it has been generated before. */
+    public String generate(String initialText, int textLength, long seed) {
+        GenerationCache cache = generationCache;
+        if (cache == null) {
+            return generate(initialText, textLength, new Random(seed));
+        }
+        String key = seed + ":" + textLength + ":" + initialText;
+        long modelVersion = version;
+        String text = cache.get(key, modelVersion);
+        if (text == null) {
+            text = generate(initialText, textLength, new Random(seed));
+            cache.put(key, text, modelVersion);
+        }
+        return text;
+    }
+
+    // Generates a random text with the given random number generator.
+    private String generate(String initialText, int textLength, Random random) {
         if (initialText.length() < windowLength) {
             return initialText;
         }
 
         StringBuilder generatedText = new StringBuilder(initialText);
         int targetLength = initialText.length() + textLength;
+        if (denseTable != null) {
+            return generateFromDenseTable(generatedText, targetLength, random);
+        }
+        if (windowTable != null) {
+            return generateFromTable(generatedText, targetLength, random);
+        }
+        WindowKey[] keys = windowKeys();
 
         while (generatedText.length() < targetLength) {
+            if (backoffMaps != null) {
+                generatedText.append(getSmoothedChar(generatedText, keys, random));
+                continue;
+            }
             String currentWindow = generatedText.substring(generatedText.length() - windowLength);
             List probs = CharDataMap.get(currentWindow);
             
@@ -123,23 +908,347 @@ public class LanguageModel {
                 break;
             }
             
-            char nextChar = getRandomChar(probs);
+            // A forced window draws no random number unless the model is seed-compatible,
+            // as in the compiled tables
+            char nextChar = (probs.getSize() == 1 && !seedCompatible) ? probs.getFirst().chr
+                                                                      : getRandomChar(probs, random);
             generatedText.append(nextChar);
         }
 
         return generatedText.toString();
     }
 
+    // Generates the rest of the given text from the compiled window table. A forced
+    // window (one with a single character in its list) leads straight to the slot of
+    // the next window, without hashing; unless the model is seed-compatible, chains
+    // of forced windows are also emitted without drawing random numbers.
+    private String generateFromTable(StringBuilder generatedText, int targetLength, Random random) {
+        int slot = windowTable.find(generatedText, generatedText.length() - windowLength);
+        while (generatedText.length() < targetLength && slot >= 0) {
+            if (!windowTable.isForced(slot)) {
+                generatedText.append(windowTable.charAt(slot, random.nextDouble()));
+                slot = windowTable.find(generatedText, generatedText.length() - windowLength);
+            } else if (seedCompatible) {
+                // Draws the random number that sampling the single character would use
+                random.nextDouble();
+                generatedText.append(windowTable.forcedChar(slot));
+                slot = windowTable.successor(slot);
+            } else {
+                slot = windowTable.appendForced(slot, generatedText, targetLength - generatedText.length());
+            }
+        }
+        return generatedText.toString();
+    }
+
+    // Generates the rest of the given text from the dense transition table, moving
+    // from the state of each window to the next one without hashing. Draws random
+    // numbers exactly as generateFromTable does.
+    private String generateFromDenseTable(StringBuilder generatedText, int targetLength, Random random) {
+        int state = denseTable.state(generatedText, generatedText.length() - windowLength);
+        while (generatedText.length() < targetLength && state >= 0 && denseTable.contains(state)) {
+            char nextChar;
+            if (denseTable.listSize(state) == 1 && !seedCompatible) {
+                nextChar = denseTable.charAt(state, 0);
+            } else {
+                nextChar = denseTable.charAt(state, random.nextDouble());
+            }
+            generatedText.append(nextChar);
+            state = denseTable.next(state, nextChar);
+        }
+        return generatedText.toString();
+    }
+
+    /** Sets whether freeze compiles the lists of this model into a read-only table
+     *  that generate samples from (a WindowTable, or a DenseTransitionTable for short
+     *  windows over a small alphabet): no string is created or hashed per generated
+     *  character, and chains of forced windows are followed without lookups. The
+     *  table is a second copy of the model, kept next to its lists (see
+     *  estimatedSize), so it is off by default. Compiled or not, generate gives the
+     *  same texts for the same seed. Smoothed models are never compiled. */
+    public void setCompiledGeneration(boolean compiledGeneration) {
+        this.compiledGeneration = compiledGeneration;
+        freeze();
+    }
+
+    /** Sets whether generate draws a random number for every character (true, the
+     *  default), or emits the characters of forced windows (windows followed by a
+     *  single character in the corpus) without drawing any (false). Generating
+     *  without these draws is faster, but it gives different texts for the same
+     *  seed than this model generates by default. Smoothed models always draw. */
+    public void setSeedCompatible(boolean seedCompatible) {
+        this.seedCompatible = seedCompatible;
+        version++;
+    }
+
+    /** Sets the capacity, in characters (of prompts and texts), of the cache of texts
+     *  generated with a seed (see generate(initialText, textLength, seed)); 0 turns the
+     *  cache off. The cache drops its least recently used texts to stay within its
+     *  capacity, and all of them whenever the model is trained or modified. */
+    public void setGenerationCache(long maxChars) {
+        generationCache = (maxChars > 0) ? new GenerationCache(maxChars) : null;
+    }
+
+    /** Returns the generation cache of this model (with its hit and miss counts), or
+     *  null if it is off. */
+    public GenerationCache generationCache() {
+        return generationCache;
+    }
+
+    /** Adds the counts of the given models, which must have the same window length
+     *  as this model, to the counts of this model. Models trained on separate parts
+     *  of a corpus (or on separate machines) can be merged into one this way.
+     *  The windows are split into shards that are merged in parallel. */
+    public void merge(LanguageModel... models) {
+        checkWindowLengths(models);
+        mergeCounts(models, null, CharDataMap);
+        freeze();
+    }
+
+    /** Replaces this model with a blend of the given models, which must have the same
+     *  window length as this model: the distribution of each window is the weighted
+     *  average of its distributions in the models that contain it. There must be one
+     *  finite, non-negative weight per model, and at least one positive weight; only
+     *  the ratios of the weights matter, and a model of weight 0 adds nothing. The
+     *  counts of the blended model are pseudo-counts proportional to these
+     *  probabilities (a character whose pseudo-count rounds to 0 is left out). If the
+     *  arguments are invalid, this model is not changed. */
+    public void interpolate(LanguageModel[] models, double[] weights) {
+        checkWindowLengths(models);
+        if (weights.length != models.length) {
+            throw new IllegalArgumentException("expected " + models.length + " weights, got " + weights.length);
+        }
+        double sum = 0.0;
+        for (double weight : weights) {
+            if (!(weight >= 0 && weight < Double.POSITIVE_INFINITY)) {
+                throw new IllegalArgumentException("weights must be finite and non-negative, got " + weight);
+            }
+            sum += weight;
+        }
+        if (sum <= 0 || sum == Double.POSITIVE_INFINITY) {
+            throw new IllegalArgumentException("weights must have a positive, finite sum, got " + sum);
+        }
+        double[] normalized = new double[weights.length];
+        for (int m = 0; m < weights.length; m++) {
+            normalized[m] = weights[m] / sum;
+        }
+        // Blends into a new map: the models (this one among them, maybe) are only read
+        HashMap<String, List> blended = new HashMap<String, List>();
+        mergeCounts(models, normalized, blended);
+        CharDataMap = blended;
+        freeze();
+    }
+
+    // Throws an IllegalArgumentException if one of the given models does not have
+    // the window length of this model.
+    private void checkWindowLengths(LanguageModel[] models) {
+        for (LanguageModel model : models) {
+            if (model.windowLength != windowLength) {
+                throw new IllegalArgumentException("cannot merge a model with window length " + model.windowLength
+                                                   + " into a model with window length " + windowLength);
+            }
+        }
+    }
+
+    // Adds the counts of the given models to the given map of lists. If weights is
+    // not null, each window of model m adds about weights[m] * INTERPOLATION_SCALE
+    // pseudo-counts, split in proportion to its counts (models of weight 0 and
+    // pseudo-counts that round to 0 are skipped).
+    private void mergeCounts(LanguageModel[] models, double[] weights, HashMap<String, List> target) {
+        // Splits the windows of all the models into shards, by hash code
+        int shards = 4 * Runtime.getRuntime().availableProcessors();
+        ArrayList<ArrayList<Map.Entry<String, List>>> entries = new ArrayList<ArrayList<Map.Entry<String, List>>>();
+        ArrayList<ArrayList<Double>> scales = new ArrayList<ArrayList<Double>>();
+        for (int shard = 0; shard < shards; shard++) {
+            entries.add(new ArrayList<Map.Entry<String, List>>());
+            scales.add(new ArrayList<Double>());
+        }
+        for (int m = 0; m < models.length; m++) {
+            if (weights != null && weights[m] == 0) {
+                continue;
+            }
+            for (Map.Entry<String, List> entry : models[m].CharDataMap.entrySet()) {
+                int shard = Math.floorMod(entry.getKey().hashCode(), shards);
+                entries.get(shard).add(entry);
+                scales.get(shard).add((weights == null) ? 0.0
+                    : weights[m] * INTERPOLATION_SCALE / entry.getValue().totalCount());
+            }
+        }
+        // Merges each shard into the existing lists of the target, or into new lists.
+        // A window belongs to one shard only, so no two threads update the same list.
+        ArrayList<HashMap<String, List>> added = new ArrayList<HashMap<String, List>>();
+        for (int shard = 0; shard < shards; shard++) {
+            added.add(new HashMap<String, List>());
+        }
+        IntStream.range(0, shards).parallel().forEach(shard -> {
+            HashMap<String, List> newLists = added.get(shard);
+            for (int i = 0; i < entries.get(shard).size(); i++) {
+                Map.Entry<String, List> entry = entries.get(shard).get(i);
+                if (weights == null) {
+                    targetList(target, newLists, entry.getKey()).addAll(entry.getValue());
+                    continue;
+                }
+                // Adds the characters from last to first, so a new list keeps their order
+                CharData[] chars = entry.getValue().toArray();
+                double scale = scales.get(shard).get(i);
+                List probs = null;
+                for (int j = chars.length - 1; j >= 0; j--) {
+                    long count = Math.round(chars[j].count * scale);
+                    if (count > 0) {
+                        if (probs == null) {
+                            probs = targetList(target, newLists, entry.getKey());
+                        }
+                        probs.update(chars[j].chr, (int) count);
+                    }
+                }
+            }
+        });
+        for (HashMap<String, List> newLists : added) {
+            target.putAll(newLists);
+        }
+    }
+
+    // Returns the list of the given window in the target map, or else in the given
+    // map of new lists, where a new empty list is added if there is none.
+    private List targetList(HashMap<String, List> target, HashMap<String, List> newLists, String window) {
+        List probs = target.get(window);
+        if (probs == null) {
+            probs = newLists.get(window);
+        }
+        if (probs == null) {
+            probs = newList();
+            newLists.put(window, probs);
+        }
+        return probs;
+    }
+
+    /** Evaluates this model on the text in the given file (held-out text).
+     *  Every character that follows a full window is predicted from its window
+     *  (smoothed, if the model is smoothed); characters the model gives no
+     *  probability to get the given probability instead, which must be between
+     *  0 and 1 (exclusive). The text is split into chunks that are evaluated in
+     *  parallel. Throws an UncheckedIOException if the file cannot be read. */
+    public Evaluation evaluate(String fileName, double unseenProbability) {
+        checkUnseenProbability(unseenProbability);
+        CharSequence text;
+        try {
+            text = In.map(fileName);
+        } catch (IllegalArgumentException e) {
+            if (e.getCause() instanceof IOException) {
+                throw new UncheckedIOException("cannot evaluate on " + fileName, (IOException) e.getCause());
+            }
+            throw e;
+        }
+        return evaluateText(text, unseenProbability);
+    }
+
+    /** Evaluates this model on the given text (see evaluate). */
+    public Evaluation evaluateText(CharSequence text, double unseenProbability) {
+        checkUnseenProbability(unseenProbability);
+        int positions = Math.max(0, text.length() - windowLength);
+        int chunks = Math.max(1, Math.min(positions / 4096, 4 * Runtime.getRuntime().availableProcessors()));
+        double logUnseen = Math.log(unseenProbability);
+        return IntStream.range(0, chunks).parallel()
+                .mapToObj(c -> evaluate(text, (int) ((long) positions * c / chunks),
+                                        (int) ((long) positions * (c + 1) / chunks), logUnseen))
+                .reduce(new Evaluation(0, 0, 0.0), Evaluation::combine);
+    }
+
+    // Throws an IllegalArgumentException if the given probability of unseen characters
+    // is not between 0 and 1 (exclusive), where its logarithm would not be a finite penalty.
+    private static void checkUnseenProbability(double unseenProbability) {
+        if (!(unseenProbability > 0 && unseenProbability < 1)) {
+            throw new IllegalArgumentException("unseen probability must be between 0 and 1, got " + unseenProbability);
+        }
+    }
+
+    // Evaluates the predictions of the characters that follow the windows starting
+    // at positions from (inclusive) to to (exclusive) of the given text.
+    private Evaluation evaluate(CharSequence text, int from, int to, double logUnseen) {
+        WindowKey[] keys = windowKeys();
+        double logLikelihood = 0.0;
+        long unseen = 0;
+        for (int i = from; i < to; i++) {
+            double p = probability(text, i + windowLength, text.charAt(i + windowLength), keys);
+            if (p <= 0) {
+                logLikelihood += logUnseen;
+                unseen++;
+            } else {
+                logLikelihood += Math.log(p);
+            }
+        }
+        return new Evaluation(to - from, unseen, logLikelihood);
+    }
+
     /** Returns a string representing the map of this language model. */
     public String toString() {
-        StringBuilder str = new StringBuilder();
-        for (String key : CharDataMap.keySet()) {
-            List keyProbs = CharDataMap.get(key);
-            str.append(key + " : " + keyProbs + "\n");
+        StringWriter str = new StringWriter();
+        try {
+            dump(str, false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
         return str.toString();
     }
 
+    /** Writes the windows of this model and their lists to the given writer, one
+     *  window per line, as toString does (in the same order), or sorted by window if
+     *  sorted is true. The lines are formatted in parallel, a bounded batch of
+     *  windows at a time, so the dump of a huge model never exists as one string. */
+    public void dump(Writer out, boolean sorted) throws IOException {
+        Iterator<Map.Entry<String, List>> entries;
+        if (sorted) {
+            ArrayList<Map.Entry<String, List>> sortedEntries = new ArrayList<Map.Entry<String, List>>(CharDataMap.entrySet());
+            sortedEntries.sort(Map.Entry.comparingByKey());
+            entries = sortedEntries.iterator();
+        } else {
+            entries = CharDataMap.entrySet().iterator();
+        }
+        int tasks = Runtime.getRuntime().availableProcessors();
+        ArrayList<Map.Entry<String, List>> batch = new ArrayList<Map.Entry<String, List>>();
+        while (entries.hasNext()) {
+            batch.clear();
+            while (entries.hasNext() && batch.size() < tasks * DUMP_CHUNK_SIZE) {
+                batch.add(entries.next());
+            }
+            String[] chunks = new String[(batch.size() + DUMP_CHUNK_SIZE - 1) / DUMP_CHUNK_SIZE];
+            IntStream.range(0, chunks.length).parallel().forEach(c -> {
+                StringBuilder str = new StringBuilder();
+                for (int i = c * DUMP_CHUNK_SIZE; i < Math.min(batch.size(), (c + 1) * DUMP_CHUNK_SIZE); i++) {
+                    str.append(batch.get(i).getKey()).append(" : ").append(batch.get(i).getValue()).append('\n');
+                }
+                chunks[c] = str.toString();
+            });
+            for (String chunk : chunks) {
+                out.write(chunk);
+            }
+        }
+        out.flush();
+    }
+
+    /** Writes the k most frequent windows of this model to the given writer, most
+     *  frequent first, one per line: the window, its number of occurrences, and its list. */
+    public void dumpTop(Writer out, int k) throws IOException {
+        // The k most frequent windows seen so far, least frequent at the head
+        Comparator<Map.Entry<String, List>> byCount = Comparator
+            .comparingLong((Map.Entry<String, List> entry) -> entry.getValue().totalCount())
+            .thenComparing(Map.Entry.comparingByKey(Comparator.reverseOrder()));
+        PriorityQueue<Map.Entry<String, List>> top = new PriorityQueue<Map.Entry<String, List>>(byCount);
+        for (Map.Entry<String, List> entry : CharDataMap.entrySet()) {
+            if (top.size() < k) {
+                top.add(entry);
+            } else if (k > 0 && byCount.compare(entry, top.peek()) > 0) {
+                top.poll();
+                top.add(entry);
+            }
+        }
+        ArrayList<Map.Entry<String, List>> sorted = new ArrayList<Map.Entry<String, List>>(top);
+        sorted.sort(byCount.reversed());
+        for (Map.Entry<String, List> entry : sorted) {
+            out.write(entry.getKey() + " : " + entry.getValue().totalCount() + " : " + entry.getValue() + "\n");
+        }
+        out.flush();
+    }
+
     public static void main(String[] args) {
          int windowLength = Integer.parseInt(args[0]);
         String initialText = args[1];
@@ -1,6 +1,18 @@
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Scanner;
 
 public class LanguageModelTester {
         public static void main(String[] args) {
@@ -19,11 +31,63 @@ public class LanguageModelTester {
             case "generate":
                 result = testGenerate();
                 break;
+            case "generationCache":
+                result = testGenerationCache();
+                break;
+            case "sketchGenerate":
+                result = testSketchGenerate();
+                break;
+            case "compiledGeneration":
+                result = testCompiledGeneration();
+                break;
+            case "evaluate":
+                result = testEvaluate();
+                break;
+            case "smoothing":
+                result = testSmoothing();
+                break;
+            case "interpolate":
+                result = testInterpolate();
+                break;
+            case "offHeap":
+                result = testOffHeap();
+                break;
+            case "sharded":
+                result = testSharded();
+                break;
+            case "readChars":
+                result = testReadChars();
+                break;
+            case "views":
+                result = testViews();
+                break;
+            case "readNumbers":
+                result = testReadNumbers();
+                break;
+            case "prefetch":
+                result = testPrefetch();
+                break;
+            case "arenaTraining":
+                result = testArenaTraining();
+                break;
             case "all":
                 result = testCalculateProbabilities();
                 result = result && testGetRandomChar();
                 result = result && testTrain();
                 result = result && testGenerate();
+                result = result && testGenerationCache();
+                result = result && testSketchGenerate();
+                result = result && testCompiledGeneration();
+                result = result && testEvaluate();
+                result = result && testSmoothing();
+                result = result && testInterpolate();
+                result = result && testOffHeap();
+                result = result && testSharded();
+                result = result && testReadChars();
+                result = result && testViews();
+                result = result && testReadNumbers();
+                result = result && testPrefetch();
+                result = result && testArenaTraining();
                 break;
             default:
                 break;
@@ -166,6 +230,708 @@ public class LanguageModelTester {
         return res;
     }
 
+    // Test method for the generation cache: a seeded text is served from the cache
+    // until the model is pruned, and then generated again from the pruned model only.
+    public static boolean testGenerationCache() {
+        LanguageModel cached = new LanguageModel(5, 20);
+        cached.train("originofspecies.txt");
+        cached.setGenerationCache(1 << 20);
+        String before = cached.generate("Natural selection", 200, 20L);
+        boolean res = before.equals(cached.generate("Natural selection", 200, 20L))
+                      && cached.generationCache().hits() == 1;
+        if (!res) {
+            System.out.println("Cache miss for a repeated seeded text: " + cached.generationCache());
+        }
+
+        long budget = cached.estimatedSize() / 4;
+        cached.pruneToBudget(budget);
+        LanguageModel uncached = new LanguageModel(5, 20);
+        uncached.train("originofspecies.txt");
+        uncached.pruneToBudget(budget);
+        String after = cached.generate("Natural selection", 200, 20L);
+        String expected = uncached.generate("Natural selection", 200, 20L);
+        if (after.equals(before) || !after.equals(expected)) {
+            System.out.println("Expected: " + expected);
+            System.out.println("Actual: " + after);
+            System.out.println("FAIL: the cache served a text generated before pruning");
+            res = false;
+        }
+        for (int i = "Natural selection".length(); i < after.length(); i++) {
+            String window = after.substring(i - 5, i);
+            if (!cached.CharDataMap.containsKey(window)) {
+                System.out.println("FAIL: generated after the pruned window \"" + window + "\"");
+                res = false;
+                break;
+            }
+        }
+        return res;
+    }
+
+    // Test method for SketchLanguageModel.generate: at epsilon = 1e-4 the sketch is
+    // much smaller than the exact model, and its seeded text is mostly real words.
+    public static boolean testSketchGenerate() {
+        SketchLanguageModel sketch = new SketchLanguageModel(5, 1e-4, 0.01, 20);
+        sketch.train("originofspecies.txt");
+        String generatedText = sketch.generate("Natural selection", 1000);
+        LanguageModel exact = new LanguageModel(5, 20);
+        exact.train("originofspecies.txt");
+
+        HashSet<String> vocabulary = new HashSet<String>();
+        String corpus = new In("originofspecies.txt").readAll();
+        vocabulary.addAll(Arrays.asList(corpus.toLowerCase().split("[^a-z]+")));
+        int words = 0;
+        int realWords = 0;
+        for (String word : generatedText.toLowerCase().split("[^a-z]+")) {
+            if (!word.isEmpty()) {
+                words++;
+                if (vocabulary.contains(word)) {
+                    realWords++;
+                }
+            }
+        }
+        boolean res = generatedText.length() == "Natural selection".length() + 1000
+                      && realWords >= 0.8 * words
+                      && sketch.sizeInBytes() < exact.estimatedSize() / 4;
+        if (!res) {
+            System.out.println("Actual: " + generatedText);
+            System.out.println("FAIL: " + realWords + " of " + words + " words are real, sketch is "
+                               + sketch.sizeInBytes() + " bytes, exact model is " + exact.estimatedSize() + " bytes");
+        }
+
+        // Window length 0 samples the most frequent characters; malformed UTF-8 is
+        // replaced, as LanguageModel reads it
+        try {
+            File file = File.createTempFile("sketch", ".txt");
+            file.deleteOnExit();
+            Files.write(file.toPath(), new byte[] {'a', 'b', (byte) 0xC3, 'a', (byte) 0xFF, 'b', 'a'});
+            SketchLanguageModel unigrams = new SketchLanguageModel(0, 0.01, 0.01, 20);
+            unigrams.train(file.getPath());
+            String text = unigrams.generate("", 50);
+            if (text.length() != 50 || !text.matches("[ab\uFFFD]+")) {
+                System.out.println("FAIL: window length 0 generated \"" + text + "\"");
+                res = false;
+            }
+        } catch (Exception e) {
+            System.out.println("FAIL: " + e);
+            res = false;
+        }
+        double [][] invalid = {{-1, 0.01, 0.01, 4}, {5, 0, 0.01, 4}, {5, 0.01, 1, 4}, {5, 0.01, 0.01, 0}, {5, 1e-9, 0.01, 4}};
+        for (double [] args : invalid) {
+            try {
+                new SketchLanguageModel((int) args[0], args[1], args[2], (int) args[3], 20);
+                System.out.println("FAIL: no exception for " + Arrays.toString(args));
+                res = false;
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        return res;
+    }
+
+    // Test method for compiled generation: the window table and the dense table
+    // pick the same characters as the lists they are compiled from, at full precision
+    // and quantized, and a compiled model generates the same seeded texts.
+    public static boolean testCompiledGeneration() {
+        boolean res = true;
+        double [] rs = {0.0, 0.1, 0.25, 0.5, 0.75, 0.9, 0.999999};
+        for (int windowLength : new int[] {2, 7}) {
+            for (int bits : new int[] {0, 8}) {
+                LanguageModel lists = new LanguageModel(windowLength, 20);
+                lists.setQuantization(bits);
+                lists.train("originofspecies.txt");
+                WindowTable table = new WindowTable(lists.CharDataMap, windowLength, bits);
+                DenseTransitionTable dense = DenseTransitionTable.build(lists.CharDataMap, windowLength, bits);
+                if ((dense == null) != (windowLength > DenseTransitionTable.MAX_WINDOW_LENGTH)) {
+                    System.out.println("FAIL: no dense table for window length " + windowLength);
+                    res = false;
+                }
+                for (Map.Entry<String, List> entry : lists.CharDataMap.entrySet()) {
+                    int slot = table.find(entry.getKey(), 0);
+                    int state = (dense == null) ? -1 : dense.state(entry.getKey(), 0);
+                    boolean same = slot >= 0 && table.listSize(slot) == entry.getValue().getSize()
+                                   && (dense == null || (dense.contains(state)
+                                                         && dense.listSize(state) == entry.getValue().getSize()));
+                    for (int i = 0; same && i < rs.length; i++) {
+                        char expected = lists.getCharAt(entry.getValue(), rs[i]);
+                        same = table.charAt(slot, rs[i]) == expected
+                               && (dense == null || dense.charAt(state, rs[i]) == expected);
+                    }
+                    if (!same) {
+                        System.out.println("FAIL: the compiled tables disagree with the list of \"" + entry.getKey()
+                                           + "\" (window length " + windowLength + ", " + bits + " bits): " + entry.getValue());
+                        res = false;
+                        break;
+                    }
+                }
+                LanguageModel compiled = new LanguageModel(windowLength, 20);
+                compiled.setQuantization(bits);
+                compiled.setCompiledGeneration(true);
+                compiled.train("originofspecies.txt");
+                for (boolean seedCompatible : new boolean[] {true, false}) {
+                    lists.setSeedCompatible(seedCompatible);
+                    compiled.setSeedCompatible(seedCompatible);
+                    String expected = lists.generate("Natural selection", 1000, 20L);
+                    String actual = compiled.generate("Natural selection", 1000, 20L);
+                    if (!actual.equals(expected)) {
+                        System.out.println("Expected: " + expected);
+                        System.out.println("Actual: " + actual);
+                        System.out.println("FAIL with windowLength = " + windowLength + ", " + bits
+                                           + " bits, seedCompatible = " + seedCompatible);
+                        res = false;
+                    }
+                }
+                if (compiled.estimatedSize() <= lists.estimatedSize()) {
+                    System.out.println("FAIL: the compiled table is not counted in estimatedSize");
+                    res = false;
+                }
+            }
+        }
+        return res;
+    }
+
+    // Test method for evaluate: held-out text gets a finite perplexity, and a file
+    // that cannot be read or an invalid unseen probability is an error, not a NaN.
+    public static boolean testEvaluate() {
+        boolean res = true;
+        LanguageModel languageModel = new LanguageModel(3, 20);
+        languageModel.train("originofspecies.txt");
+        double perplexity = languageModel.evaluate("shakespeareinlove.txt", 1e-6).perplexity();
+        if (!(perplexity > 1 && perplexity < Double.POSITIVE_INFINITY)) {
+            System.out.println("FAIL: perplexity " + perplexity);
+            res = false;
+        }
+        try {
+            languageModel.evaluate("no_such_file.txt", 1e-6);
+            System.out.println("FAIL: no exception for a missing file");
+            res = false;
+        } catch (UncheckedIOException e) {
+            // expected
+        }
+        for (double unseenProbability : new double[] {0, -1, 1, Double.NaN}) {
+            try {
+                languageModel.evaluateText("Natural selection", unseenProbability);
+                System.out.println("FAIL: no exception for unseen probability " + unseenProbability);
+                res = false;
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        return res;
+    }
+
+    // Test method for smoothing: with every method, the probabilities of the
+    // characters of the vocabulary sum to 1 after any window, whether the window
+    // was seen, only its shorter suffixes were, or none of its characters were.
+    public static boolean testSmoothing() {
+        boolean res = true;
+        Smoothing [] methods = {Smoothing.ADD_K, Smoothing.ABSOLUTE_DISCOUNTING, Smoothing.KNESER_NEY};
+        double [] parameters = {0.5, 0.75, 0.75};
+        LanguageModel languageModel = new LanguageModel(3, 20);
+        languageModel.train("originofspecies.txt");
+        HashSet<Character> vocabulary = new HashSet<Character>();
+        for (List probs : languageModel.CharDataMap.values()) {
+            probs.forEachChar((chr, count) -> vocabulary.add(chr));
+        }
+        String [] windows = {"the", "Nat", "qxz", "xhe", "~~~", "\u00e9\u00e9\u00e9"};
+        for (int m = 0; m < methods.length; m++) {
+            languageModel.setSmoothing(methods[m], parameters[m]);
+            for (String window : windows) {
+                double sum = 0.0;
+                for (char chr : vocabulary) {
+                    sum += languageModel.probability(window, chr);
+                }
+                if (Math.abs(sum - 1.0) > 1e-9) {
+                    System.out.println("FAIL: " + methods[m] + " probabilities after \"" + window + "\" sum to " + sum);
+                    res = false;
+                }
+            }
+            String text = languageModel.generate("Natural selection", 200, 20L);
+            if (text.length() != "Natural selection".length() + 200) {
+                System.out.println("FAIL: " + methods[m] + " generated " + text);
+                res = false;
+            }
+        }
+        return res;
+    }
+
+    // Test method for interpolate: invalid models or weights leave the model as it
+    // was, a model of weight 0 adds nothing, and a blend has the windows of all the
+    // models of positive weight.
+    public static boolean testInterpolate() {
+        boolean res = true;
+        LanguageModel darwin = new LanguageModel(3, 20);
+        darwin.train("originofspecies.txt");
+        LanguageModel shakespeare = new LanguageModel(3, 20);
+        shakespeare.train("shakespeareinlove.txt");
+        LanguageModel other = new LanguageModel(4, 20);
+        other.train("shakespeareinlove.txt");
+
+        LanguageModel blend = new LanguageModel(3, 20);
+        blend.train("originofspecies.txt");
+        String before = blend.toString();
+        String generated = blend.generate("Natural", 200, 20L);
+        LanguageModel [][] invalidModels = {{darwin, other}, {darwin, shakespeare}, {darwin, shakespeare},
+                                            {darwin, shakespeare}, {darwin, shakespeare}, {darwin, shakespeare}};
+        double [][] invalidWeights = {{0.5, 0.5}, {0.5}, {0.5, -0.5}, {0.5, Double.NaN},
+                                      {1, Double.POSITIVE_INFINITY}, {0, 0}};
+        for (int i = 0; i < invalidModels.length; i++) {
+            try {
+                blend.interpolate(invalidModels[i], invalidWeights[i]);
+                System.out.println("FAIL: no exception for weights " + Arrays.toString(invalidWeights[i]));
+                res = false;
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        if (!blend.toString().equals(before) || !blend.generate("Natural", 200, 20L).equals(generated)) {
+            System.out.println("FAIL: a failed interpolation changed the model");
+            res = false;
+        }
+
+        blend.interpolate(new LanguageModel[] {darwin, shakespeare}, new double[] {2, 0});
+        if (!blend.CharDataMap.keySet().equals(darwin.CharDataMap.keySet())) {
+            System.out.println("FAIL: a model of weight 0 added windows");
+            res = false;
+        }
+        for (Map.Entry<String, List> entry : darwin.CharDataMap.entrySet()) {
+            List probs = blend.CharDataMap.get(entry.getKey());
+            boolean same = probs != null && probs.getSize() == entry.getValue().getSize();
+            for (CharData cd : entry.getValue().toArray()) {
+                same = same && probs.find(cd.chr) != null && Math.abs(probs.find(cd.chr).p - cd.p) < 1e-5;
+            }
+            if (!same) {
+                System.out.println("FAIL: \"" + entry.getKey() + "\" blended as " + probs + " from " + entry.getValue());
+                res = false;
+                break;
+            }
+        }
+
+        blend.interpolate(new LanguageModel[] {blend, shakespeare}, new double[] {0.5, 0.5});
+        for (String window : shakespeare.CharDataMap.keySet()) {
+            if (!blend.CharDataMap.containsKey(window)) {
+                System.out.println("FAIL: the blend does not have the window \"" + window + "\"");
+                res = false;
+                break;
+            }
+        }
+        if (blend.CharDataMap.size() < darwin.CharDataMap.size()) {
+            System.out.println("FAIL: the blend lost windows of the model being replaced");
+            res = false;
+        }
+        return res;
+    }
+
+    // Test method for OffHeapModel: the off-heap copy generates the same seeded texts
+    // as the model, also when its regions are split into many small buffers.
+    public static boolean testOffHeap() {
+        boolean res = true;
+        for (int windowLength : new int[] {1, 7}) {
+            LanguageModel languageModel = new LanguageModel(windowLength, 20);
+            languageModel.train("originofspecies.txt");
+            String initialText = "Natural selection".substring(0, Math.max(windowLength, 7));
+            OffHeapModel offHeap = new OffHeapModel(languageModel, 20);
+            OffHeapModel chunked = new OffHeapModel(languageModel, 20, 4096);
+            String expected = languageModel.generate(initialText, 2000);
+            String [] actual = {offHeap.generate(initialText, 2000), chunked.generate(initialText, 2000)};
+            for (int i = 0; i < actual.length; i++) {
+                if (!actual[i].equals(expected)) {
+                    System.out.println("Expected: " + expected);
+                    System.out.println("Actual: " + actual[i]);
+                    System.out.println("FAIL with windowLength = " + windowLength + (i == 0 ? "" : ", 4096-byte buffers"));
+                    res = false;
+                }
+            }
+            if (chunked.sizeInBytes() < offHeap.sizeInBytes()) {
+                System.out.println("FAIL: the chunked copy is smaller than the whole one");
+                res = false;
+            }
+        }
+        return res;
+    }
+
+    // Test method for ShardCoordinator: a model sharded across worker processes on
+    // the loopback interface has the windows of a LanguageModel trained on the same
+    // corpus, and generates the same seeded texts.
+    public static boolean testSharded() {
+        boolean res = true;
+        LanguageModel languageModel = new LanguageModel(5, 20);
+        languageModel.train("originofspecies.txt");
+        String expected = languageModel.generate("Natural selection", 1000);
+        ShardCoordinator coordinator = null;
+        try {
+            coordinator = ShardCoordinator.launchLocal(3, 5, 20);
+            int [] sizes = coordinator.train("originofspecies.txt");
+            String actual = coordinator.generate("Natural selection", 1000);
+            if (Arrays.stream(sizes).sum() != languageModel.CharDataMap.size() || !actual.equals(expected)) {
+                System.out.println("Expected: " + languageModel.CharDataMap.size() + " windows, " + expected);
+                System.out.println("Actual: " + Arrays.toString(sizes) + " windows, " + actual);
+                res = false;
+            }
+        } catch (Exception e) {
+            System.out.println("FAIL: " + e);
+            res = false;
+        } finally {
+            try {
+                if (coordinator != null) {
+                    coordinator.close();
+                }
+            } catch (Exception e) {
+                System.out.println("FAIL: " + e);
+                res = false;
+            }
+        }
+        return res;
+    }
+
+    // Test method for reading characters and lines with In: readAll, readChar,
+    // readLine and isEmpty give the characters of the UTF-8 decoding of the input
+    // (malformed bytes replaced), and the lines and emptiness of the Scanner that In
+    // used to read with, for line separators of every kind, empty input, and
+    // surrogate pairs and CRLF split at the edges of the reader's buffers.
+    public static boolean testReadChars() {
+        boolean res = true;
+        String longLine = "a".repeat((1 << 16) - 1);
+        String longerLine = "b".repeat((1 << 18) - 1);
+        byte [][] inputs = {
+            new byte[0],
+            "a\r\nb\r\n\r\nc".getBytes(StandardCharsets.UTF_8),
+            "one\rtwo\n\nthree\n".getBytes(StandardCharsets.UTF_8),
+            "a\u2028b\u0085c\u2029d".getBytes(StandardCharsets.UTF_8),
+            " \t\r\n \u2028 ".getBytes(StandardCharsets.UTF_8),
+            "\u0085".getBytes(StandardCharsets.UTF_8),
+            {'a', (byte) 0xC3, 'b', (byte) 0xFF, (byte) 0xE2, (byte) 0x82, '\n', 'c', (byte) 0xF0, (byte) 0x9F},
+            (longLine + "\uD83D\uDE00\nx").getBytes(StandardCharsets.UTF_8),
+            (longerLine + "\uD83D\uDE00\r\ny").getBytes(StandardCharsets.UTF_8),
+            (longLine + "\r\nz\r").getBytes(StandardCharsets.UTF_8),
+        };
+        String [][] lines = {{}, {"a", "b", "", "c"}, {"one", "two", "", "three"}, {"a", "b", "c", "d"}};
+        for (int i = 0; i < inputs.length; i++) {
+            try {
+                File file = File.createTempFile("chars", ".txt");
+                file.deleteOnExit();
+                Files.write(file.toPath(), inputs[i]);
+                String expected = new String(inputs[i], StandardCharsets.UTF_8);
+
+                String all = new In(file).readAll();
+                StringBuilder read = new StringBuilder();
+                In in = new In(file);
+                while (in.hasNextChar()) {
+                    read.append(in.readChar());
+                }
+                String chars = read.toString();
+                ArrayList<String> actualLines = readLines(new In(file));
+                ArrayList<String> scannerLines = readLines(scannerIn(inputs[i]));
+                boolean empty = new In(file).isEmpty();
+                boolean scannerEmpty = scannerIn(inputs[i]).isEmpty();
+
+                boolean same = all.equals(expected) && chars.equals(expected)
+                               && actualLines.equals(scannerLines) && empty == scannerEmpty
+                               && (i >= lines.length || actualLines.equals(Arrays.asList(lines[i])));
+                if (!same) {
+                    System.out.println("Input " + i + ": " + expected.length() + " chars");
+                    System.out.println("Expected: lines " + abbreviate((i < lines.length) ? Arrays.asList(lines[i]) : scannerLines)
+                                       + ", empty " + scannerEmpty);
+                    System.out.println("Actual: readAll " + all.equals(expected) + ", readChar " + chars.equals(expected)
+                                       + ", lines " + abbreviate(actualLines) + ", empty " + empty);
+                    res = false;
+                }
+            } catch (Exception e) {
+                System.out.println("FAIL on input " + i + ": " + e);
+                res = false;
+            }
+        }
+        return res;
+    }
+
+    // Test method for In.map, In.lines, In.tokens and trainText
+    public static boolean testViews() {
+        boolean res = true;
+        byte [][] inputs = {
+            new byte[0],
+            "the cat\r\nsat on\n\nthe  mat\r".getBytes(StandardCharsets.UTF_8),
+            "h\u00e9llo w\u00f6rld\u2028end\u0085 \uD83D\uDE00 ok\n".getBytes(StandardCharsets.UTF_8),
+            {'a', 'b', (byte) 0xC3, ' ', 'c', (byte) 0xFF, '\n', 'a', 'b', 'c', (byte) 0xE2, (byte) 0x82},
+            "to be or not to be that is the question\n".repeat(50).getBytes(StandardCharsets.UTF_8),
+        };
+        for (int i = 0; i < inputs.length; i++) {
+            try {
+                File file = File.createTempFile("views", ".txt");
+                file.deleteOnExit();
+                Files.write(file.toPath(), inputs[i]);
+                String expected = new String(inputs[i], StandardCharsets.UTF_8);
+
+                CharSequence mapped = In.map(file.getPath());
+                CharSequence chars = new In(file).readAllChars();
+                ArrayList<String> lines = new ArrayList<String>();
+                for (SpanIterator it = In.lines(mapped); it.hasNext(); ) {
+                    lines.add(it.next().toString());
+                }
+                ArrayList<String> tokens = new ArrayList<String>();
+                for (SpanIterator it = In.tokens(mapped); it.hasNext(); ) {
+                    tokens.add(it.next().toString());
+                }
+                ArrayList<String> expectedLines = readLines(new In(file));
+                java.util.List<String> expectedTokens = Arrays.asList(new In(file).readAllStrings());
+                boolean sameSub = expected.length() < 4 || mapped.subSequence(1, 4).toString().equals(expected.substring(1, 4));
+
+                LanguageModel fromFile = new LanguageModel(2, 20);
+                fromFile.train(file.getPath());
+                LanguageModel fromText = new LanguageModel(2, 20);
+                fromText.trainText(mapped);
+                boolean sameModel = fromText.toString().equals(fromFile.toString());
+
+                if (!mapped.toString().equals(expected) || !chars.toString().equals(expected) || !sameSub
+                    || !lines.equals(expectedLines) || !tokens.equals(expectedTokens) || !sameModel) {
+                    System.out.println("Input " + i + ": " + expected.length() + " chars");
+                    System.out.println("Expected: lines " + abbreviate(expectedLines) + ", tokens " + expectedTokens.size());
+                    System.out.println("Actual: map " + mapped.toString().equals(expected) + ", readAllChars " + chars.toString().equals(expected)
+                                       + ", subSequence " + sameSub + ", lines " + abbreviate(lines) + ", tokens " + tokens.size()
+                                       + ", same model " + sameModel);
+                    res = false;
+                }
+            } catch (Exception e) {
+                System.out.println("FAIL on input " + i + ": " + e);
+                res = false;
+            }
+        }
+        return res;
+    }
+
+    // Test method for In.readAllInts, readAllLongs and readAllDoubles
+    public static boolean testReadNumbers() {
+        boolean res = true;
+        Random random = new Random(7);
+        StringBuilder ints = new StringBuilder();
+        StringBuilder doubles = new StringBuilder();
+        while (ints.length() < (3 << 20)) {
+            ints.append(random.nextInt()).append((random.nextInt(8) == 0) ? "\n" : " ");
+            doubles.append(random.nextDouble() * Math.pow(10, random.nextInt(40) - 20)).append(' ');
+            doubles.append(random.nextInt(1000000) / 1000.0).append('\t');
+        }
+        String [] inputs = {
+            "",
+            " \t\r\n\u2028 ",
+            "0 -0 +7 2147483647 -2147483648 123456789 -999999999\n",
+            "1 2147483648 3",
+            "9223372036854775807 -9223372036854775808 999999999999999999 -1000000000000000000",
+            "1 9223372036854775808",
+            "0.1 -0 -0.0 1e22 1e23 1.5e-7 .5 5. 1E5 1e+5 -2.5E-3 123456789012345678 4.9e-324 1e308 1e-400",
+            "3.141592653589793 2.718281828459045 0.30000000000000004 9007199254740993 1234567.0000001",
+            "NaN Infinity -Infinity +Infinity 0x1p3 1d 2f 0x1.8p1",
+            "1 2 x 3", "4 -", "+", "1.2.3", "1e", "e5", "--1", ".", "1e5000 1e1234",
+            "\u0661\u0662 3", "7\u00a08",
+            ints.toString(),
+            ints + " 12x " + ints,
+            doubles.toString(),
+            doubles + " 1..5",
+        };
+        for (int i = 0; i < inputs.length; i++) {
+            try {
+                File file = File.createTempFile("numbers", ".txt");
+                file.deleteOnExit();
+                Files.write(file.toPath(), inputs[i].getBytes(StandardCharsets.UTF_8));
+                String [] tokens = new In(file).readAllStrings();
+                for (int kind = 0; kind < 3; kind++) {
+                    String expected = parseTokens(tokens, kind);
+                    String actual = readNumbers(new In(file), kind);
+                    if (!actual.equals(expected)) {
+                        int from = 0;
+                        while (from < Math.min(expected.length(), actual.length()) && expected.charAt(from) == actual.charAt(from)) {
+                            from++;
+                        }
+                        from = Math.max(0, from - 40);
+                        System.out.println("Input " + i + ", " + new String[] {"ints", "longs", "doubles"}[kind] + ", from char " + from);
+                        System.out.println("Expected: " + expected.substring(from, Math.min(expected.length(), from + 80)));
+                        System.out.println("Actual: " + actual.substring(from, Math.min(actual.length(), from + 80)));
+                        res = false;
+                    }
+                }
+            } catch (Exception e) {
+                System.out.println("FAIL on input " + i + ": " + e);
+                res = false;
+            }
+        }
+        return res;
+    }
+
+    // Test method for train(Readable), which reads its source ahead in chunks
+    public static boolean testPrefetch() {
+        boolean res = true;
+        Random random = new Random(11);
+        int [] lengths = {0, 3, 65535, 65536, 65537, 200000};
+        int [] steps = {7, 100000};
+        for (int length : lengths) {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < length; i++) {
+                text.append("abcd".charAt(random.nextInt(4)));
+            }
+            for (int windowLength = 1; windowLength <= 5; windowLength += 2) {
+                LanguageModel expected = new LanguageModel(windowLength, 20);
+                expected.trainText(text);
+                for (int step : steps) {
+                    LanguageModel actual = new LanguageModel(windowLength, 20);
+                    try {
+                        actual.train(readable(text, step, -1));
+                    } catch (Exception e) {
+                        System.out.println("FAIL on length " + length + ": " + e);
+                        res = false;
+                        continue;
+                    }
+                    if (!actual.toString().equals(expected.toString())) {
+                        System.out.println("Length " + length + ", window " + windowLength + ", reads of " + step + " chars");
+                        System.out.println("Expected: " + expected.toString().length() + " chars of model");
+                        System.out.println("Actual: " + actual.toString().length() + " chars of model");
+                        res = false;
+                    }
+                }
+            }
+        }
+        // An error of the source, after some chunks were read, reaches the caller
+        try {
+            new LanguageModel(3, 20).train(readable("ab".repeat(100000), 1000, 150000));
+            System.out.println("Expected: IOException, Actual: none");
+            res = false;
+        } catch (IOException e) {
+            if (!"source failed".equals(e.getMessage())) {
+                System.out.println("Expected: source failed, Actual: " + e.getMessage());
+                res = false;
+            }
+        }
+        return res;
+    }
+
+    // Returns a source of the given text that reads at most step characters at a
+    // time, and that fails once it has read failAt characters (unless it is -1).
+    private static Readable readable(CharSequence text, int step, int failAt) {
+        int [] pos = {0};
+        return chunk -> {
+            if (pos[0] == failAt) {
+                throw new IOException("source failed");
+            }
+            if (pos[0] == text.length()) {
+                return -1;
+            }
+            int n = Math.min(Math.min(chunk.remaining(), step), text.length() - pos[0]);
+            if (failAt >= 0) {
+                n = Math.min(n, failAt - pos[0]);
+            }
+            chunk.append(text, pos[0], pos[0] + n);
+            pos[0] += n;
+            return n;
+        };
+    }
+
+    // Test method for arena training: the model, and the texts it generates, are those
+    // of plain training, over two training runs and after clear
+    public static boolean testArenaTraining() {
+        boolean res = true;
+        String more = "Natural selection acts only by the preservation of profitable modifications.";
+        for (int windowLength : new int[] {1, 3, 7}) {
+            for (boolean frequencyOrdered : new boolean[] {false, true}) {
+                LanguageModel plain = new LanguageModel(windowLength, 20);
+                plain.setFrequencyOrdered(frequencyOrdered);
+                plain.train("originofspecies.txt");
+                plain.trainText(more);
+                LanguageModel arena = new LanguageModel(windowLength, 20);
+                arena.setFrequencyOrdered(frequencyOrdered);
+                arena.setArenaTraining(true);
+                arena.train("originofspecies.txt");
+                arena.trainText(more);
+                boolean same = arena.toString().equals(plain.toString())
+                               && arena.generate("Natural selection", 1000, 20L).equals(plain.generate("Natural selection", 1000, 20L));
+                LanguageModel fresh = new LanguageModel(windowLength, 20);
+                fresh.setFrequencyOrdered(frequencyOrdered);
+                fresh.trainText(more);
+                arena.clear();
+                arena.trainText(more);
+                boolean sameAfterClear = arena.toString().equals(fresh.toString());
+                if (!same || !sameAfterClear) {
+                    System.out.println("FAIL with windowLength = " + windowLength + ", frequencyOrdered = " + frequencyOrdered
+                                       + ": same model " + same + ", same model after clear " + sameAfterClear);
+                    res = false;
+                }
+            }
+        }
+        return res;
+    }
+
+    // Returns the ints (kind 0), longs (1) or doubles (2) read from the given input,
+    // or the exception that was thrown.
+    private static String readNumbers(In in, int kind) {
+        try {
+            switch (kind) {
+                case 0: return Arrays.toString(in.readAllInts());
+                case 1: return Arrays.toString(in.readAllLongs());
+                default: return doubleBits(in.readAllDoubles());
+            }
+        } catch (RuntimeException e) {
+            return e.toString();
+        }
+    }
+
+    // Returns the given tokens parsed one by one, as readNumbers reports them.
+    private static String parseTokens(String [] tokens, int kind) {
+        try {
+            switch (kind) {
+                case 0:
+                    int [] ints = new int[tokens.length];
+                    for (int i = 0; i < tokens.length; i++) {
+                        ints[i] = Integer.parseInt(tokens[i]);
+                    }
+                    return Arrays.toString(ints);
+                case 1:
+                    long [] longs = new long[tokens.length];
+                    for (int i = 0; i < tokens.length; i++) {
+                        longs[i] = Long.parseLong(tokens[i]);
+                    }
+                    return Arrays.toString(longs);
+                default:
+                    double [] doubles = new double[tokens.length];
+                    for (int i = 0; i < tokens.length; i++) {
+                        doubles[i] = Double.parseDouble(tokens[i]);
+                    }
+                    return doubleBits(doubles);
+            }
+        } catch (RuntimeException e) {
+            return e.toString();
+        }
+    }
+
+    // Returns the exact bits of the given doubles, so that -0.0 and 0.0 differ.
+    private static String doubleBits(double [] vals) {
+        long [] bits = new long[vals.length];
+        for (int i = 0; i < vals.length; i++) {
+            bits[i] = Double.doubleToRawLongBits(vals[i]);
+        }
+        return Arrays.toString(bits);
+    }
+
+    // Returns the lines read from the given input, until readLine returns null.
+    private static ArrayList<String> readLines(In in) {
+        ArrayList<String> lines = new ArrayList<String>();
+        String line;
+        while ((line = in.readLine()) != null) {
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    // Returns the given lines, with long lines cut to their first characters and length.
+    private static String abbreviate(java.util.List<String> lines) {
+        ArrayList<String> shown = new ArrayList<String>();
+        for (String line : lines) {
+            shown.add((line.length() <= 20) ? line : line.substring(0, 8) + "...(" + line.length() + " chars)");
+        }
+        return shown.toString();
+    }
+
+    // Returns an In that reads the given bytes through a Scanner, as In used to.
+    private static In scannerIn(byte [] bytes) {
+        Scanner scanner = new Scanner(new ByteArrayInputStream(bytes), "UTF-8");
+        scanner.useLocale(Locale.US);
+        return new In(scanner);
+    }
+
     private static boolean stringEqualsNoSpaces(String s1, String s2) {
         s1 = s1.replaceAll("\\s+", "");
         s2 = s2.replaceAll("\\s+", "");
@@ -10,12 +10,78 @@ public class List {
 
     // The number of elements in this list
     private int size;
+
+    // True if update keeps the elements sorted by decreasing count
+    private boolean frequencyOrdered;
+
+    // The nodes of this list by position, built on demand for indexed access to
+    // lists of at least INDEX_MIN_SIZE elements, and dropped when a node is added,
+    // removed or moved (null until it is needed again)
+    private volatile Node[] index;
+    private static final int INDEX_MIN_SIZE = 16;
+
+    // The sum of the counts of this list, computed on demand by totalCount and
+    // dropped by update, addFirst, remove and addAll (-1 until it is needed again)
+    private long totalCount = -1;
+
+    // Merges with at most this many pairs of elements to compare are done by scanning
+    private static final int SCAN_MERGE_MAX_PAIRS = 64;
     
     /** Constructs an empty list. */
     public List() {
         first = null;
         size = 0;
     }
+
+    /** Constructs an empty list, which is frequency-ordered if the given flag is true
+     *  (see setFrequencyOrdered). */
+    public List(boolean frequencyOrdered) {
+        this();
+        this.frequencyOrdered = frequencyOrdered;
+    }
+
+    /** Returns true if update keeps this list sorted by decreasing count. */
+    public boolean isFrequencyOrdered() {
+        return frequencyOrdered;
+    }
+
+    /** Sets the order kept by update. In a frequency-ordered list, the elements are
+     *  sorted by decreasing count (and, among equal counts, by arrival), so the most
+     *  frequent characters are found (and sampled) first. Switching it on sorts the list. */
+    public void setFrequencyOrdered(boolean frequencyOrdered) {
+        this.frequencyOrdered = frequencyOrdered;
+        if (frequencyOrdered) {
+            sortByCount();
+        }
+    }
+
+    /** Sorts this list by decreasing count. Elements with equal counts keep their order. */
+    public void sortByCount() {
+        Node current = first;
+        first = null;
+        while (current != null) {
+            Node next = current.next;
+            current.next = null;
+            insertSorted(current);
+            current = next;
+        }
+    }
+
+    // Inserts the given node after all the nodes whose count is at least its count.
+    private void insertSorted(Node node) {
+        index = null;
+        if (first == null || first.cp.count < node.cp.count) {
+            node.next = first;
+            first = node;
+            return;
+        }
+        Node prev = first;
+        while (prev.next != null && prev.next.cp.count >= node.cp.count) {
+            prev = prev.next;
+        }
+        node.next = prev.next;
+        prev.next = node;
+    }
     
     /** Returns the number of elements in this list. */
     public int getSize() {
@@ -30,12 +96,45 @@ public class List {
         return first.cp;
     }
 
+    /** Returns the CharData of the last element in this list. */
+    public CharData getLast() {
+        if (first == null) {
+            return null;
+        }
+        return node(size - 1).cp;
+    }
+
+    // Returns the node at the given position of this list, which must be valid:
+    // by walking the list if it is short, and from the index otherwise.
+    private Node node(int i) {
+        if (size < INDEX_MIN_SIZE) {
+            Node current = first;
+            for (int j = 0; j < i; j++) {
+                current = current.next;
+            }
+            return current;
+        }
+        Node[] nodes = index;
+        if (nodes == null) {
+            nodes = new Node[size];
+            Node current = first;
+            for (int j = 0; j < size; j++) {
+                nodes[j] = current;
+                current = current.next;
+            }
+            index = nodes;
+        }
+        return nodes[i];
+    }
+
     /** GIVE Adds a CharData object with the given character to the beginning of this list. */
     public void addFirst(char chr) {
         CharData newCd = new CharData(chr);
         Node newNode = new Node(newCd, first);
         first = newNode;
         size++;
+        index = null;
+        totalCount = -1;
     }
     
     /** GIVE Textual representation of this list. */
@@ -70,20 +169,84 @@ public class List {
         return -1;
     }
 
+    /** Returns the first CharData object in this list that has the same chr value
+     * as the given char, or null if there is no such object in this list. */
+    public CharData find(char chr) {
+        Node current = first;
+        while (current != null) {
+            if (current.cp.chr == chr) {
+                return current.cp;
+            }
+            current = current.next;
+        }
+        return null;
+    }
+
     /** If the given character exists in one of the CharData objects in this list,
      * increments its counter. Otherwise, adds a new CharData object with the
      * given chr to the beginning of this list. */
     public void update(char chr) {
+        update(chr, 1);
+    }
+
+    /** If the given character exists in one of the CharData objects in this list,
+     * adds the given count to its counter. Otherwise, adds a new CharData object with
+     * the given chr and count to the beginning of this list (or, if the list is
+     * frequency-ordered, after the elements whose count is at least the given count). */
+    public void update(char chr, int count) {
+        totalCount = -1;
+        if (frequencyOrdered) {
+            updateOrdered(chr, count);
+            return;
+        }
         Node current = first;
         while (current != null) {
             if (current.cp.chr == chr) {
-                current.cp.count++;
+                current.cp.count += count;
                 return;
             }
             current = current.next;
         }
         // If we reached here, the char was not found
         addFirst(chr);
+        first.cp.count = count;
+    }
+
+    // Updates a list sorted by decreasing count, keeping it sorted. An element whose
+    // count grows by one swaps its CharData with the first element of its run of
+    // equal counts; other changes move its node to its new place.
+    private void updateOrdered(char chr, int count) {
+        Node prev = null;
+        Node runHead = null;
+        Node current = first;
+        while (current != null) {
+            if (runHead == null || runHead.cp.count != current.cp.count) {
+                runHead = current;
+            }
+            if (current.cp.chr == chr) {
+                if (count == 1) {
+                    CharData cd = current.cp;
+                    cd.count++;
+                    current.cp = runHead.cp;
+                    runHead.cp = cd;
+                } else {
+                    current.cp.count += count;
+                    if (prev == null) {
+                        first = current.next;
+                    } else {
+                        prev.next = current.next;
+                    }
+                    insertSorted(current);
+                }
+                return;
+            }
+            prev = current;
+            current = current.next;
+        }
+        CharData cd = new CharData(chr);
+        cd.count = count;
+        insertSorted(new Node(cd));
+        size++;
     }
 
     /** GIVE If the given character exists in one of the CharData objects
@@ -91,6 +254,8 @@ public class List {
      * true. Otherwise, returns false. */
     public boolean remove(char chr) {
         if (first == null) return false;
+        index = null;
+        totalCount = -1;
 
         // Case 1: Removing the first element
         if (first.cp.chr == chr) {
@@ -121,11 +286,116 @@ public class List {
         if (index < 0 || index >= size) {
             throw new IndexOutOfBoundsException();
         }
-        Node current = first;
-        for (int i = 0; i < index; i++) {
-            current = current.next;
+        return node(index).cp;
+    }
+
+    /** Returns the sum of the counts of the elements of this list. The sum is kept
+     *  until the list is changed through its methods; a count changed directly
+     *  in a CharData object is not seen. */
+    public long totalCount() {
+        long total = totalCount;
+        if (total < 0) {
+            total = 0;
+            for (Node current = first; current != null; current = current.next) {
+                total += current.cp.count;
+            }
+            totalCount = total;
+        }
+        return total;
+    }
+
+    /** Adds the counts of the given list to the counts of this list, as if its
+     *  elements had been added with update from its last to its first: the
+     *  characters that are new to this list are added to its beginning, in the
+     *  order they have in the given list. Takes time linear in the sizes of
+     *  both lists (unless this list is frequency-ordered). The given list is not changed. */
+    public void addAll(List other) {
+        if (frequencyOrdered || (long) size * other.size <= SCAN_MERGE_MAX_PAIRS) {
+            CharData[] chars = other.toArray();
+            for (int i = chars.length - 1; i >= 0; i--) {
+                update(chars[i].chr, chars[i].count);
+            }
+            return;
+        }
+        // A hash table of the characters of this list, then of the new characters
+        int capacity = Integer.highestOneBit((size + other.size) * 2 - 1) * 2;
+        int mask = capacity - 1;
+        CharData[] table = new CharData[capacity];
+        for (Node current = first; current != null; current = current.next) {
+            int slot = slotOf(table, mask, current.cp.chr);
+            if (table[slot] == null) {
+                table[slot] = current.cp;
+            }
+        }
+        Node newFirst = null;
+        Node newLast = null;
+        int added = 0;
+        for (Node current = other.first; current != null; current = current.next) {
+            int slot = slotOf(table, mask, current.cp.chr);
+            if (table[slot] != null) {
+                table[slot].count += current.cp.count;
+                continue;
+            }
+            CharData cd = new CharData(current.cp.chr);
+            cd.count = current.cp.count;
+            table[slot] = cd;
+            Node node = new Node(cd);
+            if (newLast == null) {
+                newFirst = node;
+            } else {
+                newLast.next = node;
+            }
+            newLast = node;
+            added++;
+        }
+        if (newLast != null) {
+            newLast.next = first;
+            first = newFirst;
+            size += added;
+            index = null;
         }
-        return current.cp;
+        totalCount = -1;
+    }
+
+    // Returns the slot of the given character in the given hash table of CharData
+    // objects, or the empty slot where it belongs.
+    private static int slotOf(CharData[] table, int mask, char chr) {
+        int slot = (chr * 0x9E3779B9 >>> 16) & mask;
+        while (table[slot] != null && table[slot].chr != chr) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /** Copies the CharData objects of this list, in order, into the given array
+     *  from the given position, and returns their number. The array must have
+     *  room for them. */
+    public int copyInto(CharData[] arr, int offset) {
+        int i = offset;
+        for (Node current = first; current != null; current = current.next) {
+            arr[i++] = current.cp;
+        }
+        return size;
+    }
+
+    /** Copies the characters, counts and cumulative probabilities of this list, in
+     *  order, into the given arrays from the given position (an array may be null
+     *  if it is not needed), and returns their number. The arrays must have room for them. */
+    public int copyInto(char[] chars, int[] counts, double[] cps, int offset) {
+        int i = offset;
+        for (Node current = first; current != null; current = current.next) {
+            if (chars != null) {
+                chars[i] = current.cp.chr;
+            }
+            if (counts != null) {
+                counts[i] = current.cp.count;
+            }
+            if (cps != null) {
+                cps[i] = current.cp.cp;
+            }
+            i++;
+        }
+        return size;
     }
 
     /** Returns an array of CharData objects, containing all the CharData objects in this list. */
@@ -140,18 +410,27 @@ public class List {
         return arr;
     }
 
-    /** Returns an iterator over the elements in this list, starting at the given index. */
-    public ListIterator listIterator(int index) {
-        // If the list is empty, there is nothing to iterate   
-        if (size == 0) return null;
-        // Gets the element in position index of this list
-        Node current = first;
-        int i = 0;
-        while (i < index) {
-            current = current.next;
-            i++;
+    /** Performs the given operation on the character and count of each element of
+     *  this list, in order. */
+    public void forEachChar(CharCountConsumer action) {
+        for (Node current = first; current != null; current = current.next) {
+            action.accept(current.cp.chr, current.cp.count);
         }
-        // Returns an iterator that starts in that element
-        return new ListIterator(current);
+    }
+
+    /** Returns an iterator over the elements in this list, starting at the given index.
+     *  If the index is the size of this list (or the list is empty), the iterator has
+     *  no elements. */
+    public ListIterator listIterator(int index) {
+        return listIterator(index, new ListIterator(null));
+    }
+
+    /** Moves the given iterator to the element at the given index of this list, and
+     *  returns it. Reusing one iterator this way traverses lists without allocating. */
+    public ListIterator listIterator(int index, ListIterator itr) {
+        // Starts at the element in position index of this list (none if it is the end);
+        // starting at the first element does not need the index
+        itr.current = (index == size) ? null : (index == 0) ? first : node(index);
+        return itr;
     }
 }
@@ -1,5 +1,7 @@
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.Random;
 
 public class ListTester {
     public static void main(String[] args) {
@@ -24,6 +26,18 @@ public class ListTester {
             case "remove":
                 result = testRemove();
                 break;
+            case "frequencyOrder":
+                result = testFrequencyOrder();
+                break;
+            case "index":
+                result = testIndex();
+                break;
+            case "addAll":
+                result = testAddAll();
+                break;
+            case "totalCount":
+                result = testTotalCount();
+                break;
             
             case "all":
                 result = testAddFirst();
@@ -32,6 +46,10 @@ public class ListTester {
                 result = result && testGet();
                 result = result && testUpdate();
                 result = result && testRemove();
+                result = result && testFrequencyOrder();
+                result = result && testIndex();
+                result = result && testAddAll();
+                result = result && testTotalCount();
                 break; 
             default:
                 break;
@@ -257,4 +275,276 @@ public class ListTester {
         return result;
     }
     
+    public static boolean testFrequencyOrder() {
+        boolean result = true;
+        String [] testWords = {"commitee_", "Hello_World", "linked_lists_are_fun", "lexicographic_order"};
+        Random random = new Random(20);
+        for (int i = 0; i < testWords.length; i++) {
+            String w = testWords[i];
+            List yourSolution = new List(true);
+            HashMap<Character, Integer> counts = new HashMap<Character, Integer>();
+            // Mixed updates: single occurrences and larger counts, in random order
+            for (int j = 0; j < 200; j++) {
+                char c = w.charAt(random.nextInt(w.length()));
+                int k = (j % 3 == 0) ? 1 + random.nextInt(5) : 1;
+                yourSolution.update(c, k);
+                counts.merge(c, k, Integer::sum);
+                if (!testFrequencyOrderCase(yourSolution, counts)) {
+                    System.out.println("Word: " + w + ", update: " + c + " " + k);
+                    System.out.println("Actual: " + yourSolution.toString());
+                    result = false;
+                    break;
+                }
+            }
+        }
+        // Switching the order on sorts an existing list, keeping equal counts in order
+        List yourSolution = new List();
+        String w = "lexicographic_order";
+        for (int j = 0; j < w.length(); j++) {
+            yourSolution.update(w.charAt(w.length() - 1 - j));
+        }
+        CharData [] before = yourSolution.toArray();
+        Arrays.sort(before, (x, y) -> y.count - x.count);
+        String solution = "";
+        for (int j = 0; j < before.length; j++) {
+            solution += before[j].chr;
+        }
+        yourSolution.setFrequencyOrdered(true);
+        CharData [] after = yourSolution.toArray();
+        String actual = "";
+        for (int j = 0; j < after.length; j++) {
+            actual += after[j].chr;
+        }
+        if (!actual.equals(solution)) {
+            System.out.println("Expected: " + solution);
+            System.out.println("Actual: " + actual);
+            result = false;
+        }
+        if (!result){
+            System.out.println("FrequencyOrder Test failed");
+        }
+        return result;
+    }
+
+    // Checks that the list is sorted by decreasing count, and holds exactly the given counts.
+    private static boolean testFrequencyOrderCase (List yourSolution, HashMap<Character, Integer> counts) {
+        if (yourSolution.getSize() != counts.size()) {
+            return false;
+        }
+        CharData [] chars = yourSolution.toArray();
+        for (int i = 0; i < chars.length; i++) {
+            if (i > 0 && chars[i - 1].count < chars[i].count) {
+                return false;
+            }
+            if (counts.get(chars[i].chr) == null || counts.get(chars[i].chr) != chars[i].count) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static boolean testIndex() {
+        boolean result = true;
+        // Lists long enough to be indexed; each change must drop the index
+        String word = "the_quick_brown_fox_jumps_over";
+        LinkedList<Character> solution = new LinkedList<Character>();
+        List yourSolution = new List();
+        for (int i = 0; i < word.length(); i++) {
+            if (!solution.contains(word.charAt(i))) {
+                solution.addFirst(word.charAt(i));
+                yourSolution.addFirst(word.charAt(i));
+            }
+        }
+        result = result && testIndexCase("build", solution, yourSolution);
+        yourSolution.addFirst('z');
+        solution.addFirst('z');
+        result = result && testIndexCase("addFirst z", solution, yourSolution);
+        yourSolution.remove('k');
+        solution.remove((Character) 'k');
+        result = result && testIndexCase("remove k", solution, yourSolution);
+        yourSolution.remove('z');
+        solution.remove((Character) 'z');
+        result = result && testIndexCase("remove first", solution, yourSolution);
+        yourSolution.remove('t');
+        solution.remove((Character) 't');
+        result = result && testIndexCase("remove last", solution, yourSolution);
+        yourSolution.update('y');
+        solution.addFirst('y');
+        result = result && testIndexCase("update y", solution, yourSolution);
+        List other = new List();
+        other.update('l');
+        other.update('a');
+        yourSolution.addAll(other);
+        solution.addFirst('l');
+        solution.addFirst('a');
+        result = result && testIndexCase("addAll", solution, yourSolution);
+        // A frequency-ordered list moves its nodes on update
+        List ordered = new List(true);
+        for (int i = 0; i < word.length(); i++) {
+            ordered.update(word.charAt(i));
+        }
+        ordered.get(0);
+        ordered.update('x', 5);
+        result = result && testIndexCase("ordered update x 5", ordered);
+        ordered.update('q', 2);
+        result = result && testIndexCase("ordered update q 2", ordered);
+        ordered.update('9', 3);
+        result = result && testIndexCase("ordered update 9 3", ordered);
+        if (!result){
+            System.out.println("Index Test failed");
+        }
+        return result;
+    }
+
+    // Checks get, getLast and listIterator against the given characters, in order.
+    private static boolean testIndexCase (String change, LinkedList<Character> solution, List yourSolution) {
+        String expected = "";
+        for (Character c : solution) {
+            expected += c;
+        }
+        return testIndexCase(change, expected, yourSolution);
+    }
+
+    // Checks get, getLast and listIterator against the characters of the list's nodes.
+    private static boolean testIndexCase (String change, List yourSolution) {
+        CharData [] chars = yourSolution.toArray();
+        String expected = "";
+        for (int i = 0; i < chars.length; i++) {
+            expected += chars[i].chr;
+        }
+        return testIndexCase(change, expected, yourSolution);
+    }
+
+    private static boolean testIndexCase (String change, String expected, List yourSolution) {
+        String actual = "";
+        for (int i = 0; i < yourSolution.getSize(); i++) {
+            actual += yourSolution.get(i).chr;
+        }
+        String fromIterator = "";
+        ListIterator itr = yourSolution.listIterator(expected.length() / 2);
+        while (itr.hasNext()) {
+            fromIterator += itr.next().chr;
+        }
+        char last = yourSolution.getLast().chr;
+        if (!actual.equals(expected) || !fromIterator.equals(expected.substring(expected.length() / 2))
+            || last != expected.charAt(expected.length() - 1)) {
+            System.out.println("Change: " + change);
+            System.out.println("Expected: " + expected + ", last: " + expected.charAt(expected.length() - 1));
+            System.out.println("Actual: " + actual + ", iterator from " + expected.length() / 2 + ": " + fromIterator
+                               + ", last: " + last);
+            return false;
+        }
+        return true;
+    }
+
+    public static boolean testAddAll() {
+        boolean result = true;
+        Random random = new Random(44);
+        // Small lists are merged by scanning, large ones with a hash table
+        int [] sizes = {0, 1, 3, 8, 20, 60};
+        for (int i = 0; i < sizes.length; i++) {
+            for (int j = 0; j < sizes.length; j++) {
+                for (int ordered = 0; ordered < 2; ordered++) {
+                    String word = randomWord(random, sizes[i]);
+                    String otherWord = randomWord(random, sizes[j]);
+                    List yourSolution = listOf(word, ordered == 1);
+                    List solution = listOf(word, ordered == 1);
+                    List other = listOf(otherWord, false);
+                    String otherBefore = other.toString();
+                    yourSolution.addAll(other);
+                    CharData [] chars = other.toArray();
+                    for (int k = chars.length - 1; k >= 0; k--) {
+                        solution.update(chars[k].chr, chars[k].count);
+                    }
+                    if (!yourSolution.toString().equals(solution.toString())
+                        || yourSolution.getSize() != solution.getSize()
+                        || !other.toString().equals(otherBefore)) {
+                        System.out.println("List: " + word + ", other: " + otherWord + ", ordered: " + (ordered == 1));
+                        System.out.println("Expected: " + solution);
+                        System.out.println("Actual: " + yourSolution + ", other: " + other);
+                        result = false;
+                    }
+                }
+            }
+        }
+        if (!result){
+            System.out.println("AddAll Test failed");
+        }
+        return result;
+    }
+
+    public static boolean testTotalCount() {
+        boolean result = true;
+        Random random = new Random(45);
+        for (int ordered = 0; ordered < 2; ordered++) {
+            List yourSolution = listOf(randomWord(random, 40), ordered == 1);
+            result = result && testTotalCountCase("build", yourSolution);
+            for (int i = 0; i < 30; i++) {
+                char c = (char) ('a' + random.nextInt(20));
+                switch (i % 5) {
+                    case 0:
+                        yourSolution.remove(c);
+                        result = result && testTotalCountCase("remove " + c, yourSolution);
+                        break;
+                    case 1:
+                        yourSolution.update(c, 1 + random.nextInt(4));
+                        result = result && testTotalCountCase("update " + c, yourSolution);
+                        break;
+                    case 2:
+                        yourSolution.addAll(listOf(randomWord(random, 10), false));
+                        result = result && testTotalCountCase("addAll", yourSolution);
+                        break;
+                    case 3:
+                        yourSolution.update(c);
+                        result = result && testTotalCountCase("update " + c, yourSolution);
+                        break;
+                    default:
+                        yourSolution.remove(yourSolution.getFirst().chr);
+                        result = result && testTotalCountCase("remove first", yourSolution);
+                        break;
+                }
+            }
+        }
+        if (!result){
+            System.out.println("TotalCount Test failed");
+        }
+        return result;
+    }
+
+    private static boolean testTotalCountCase (String change, List yourSolution) {
+        long solution = 0;
+        CharData [] chars = yourSolution.toArray();
+        for (int i = 0; i < chars.length; i++) {
+            solution += chars[i].count;
+        }
+        // Asked twice: once to compute the sum, once from the kept sum
+        long actual = yourSolution.totalCount();
+        long again = yourSolution.totalCount();
+        if (actual != solution || again != solution) {
+            System.out.println("Change: " + change + ", list: " + yourSolution);
+            System.out.println("Expected: " + solution);
+            System.out.println("Actual: " + actual + ", then: " + again);
+            return false;
+        }
+        return true;
+    }
+
+    // Returns a word of the given length, made of the first 20 lowercase letters.
+    private static String randomWord (Random random, int length) {
+        String word = "";
+        for (int i = 0; i < length; i++) {
+            word += (char) ('a' + random.nextInt(20));
+        }
+        return word;
+    }
+
+    // Returns the list of the counts of the characters of the given word.
+    private static List listOf (String word, boolean frequencyOrdered) {
+        List list = new List(frequencyOrdered);
+        for (int i = 0; i < word.length(); i++) {
+            list.update(word.charAt(i));
+        }
+        return list;
+    }
+
 }
@@ -0,0 +1,40 @@
+/** Prints the size of a trained language model against its perplexity on
+ *  held-out text, for several pruning thresholds and quantization levels. The
+ *  size of the lists and the size of the table compiled for generate are printed
+ *  apart: quantization only makes the table smaller.
+ *  Usage: java ModelReport windowLength trainFile heldOutFile [maxBytes] */
+public class ModelReport {
+
+    // The probability assigned to characters the model has never seen after a window.
+    private static final double UNSEEN_PROBABILITY = 1e-6;
+
+    public static void main(String[] args) {
+        int windowLength = Integer.parseInt(args[0]);
+        String trainFile = args[1];
+        String heldOut = args[2];
+
+        long maxBytes = (args.length > 3) ? Long.parseLong(args[3]) : Long.MAX_VALUE;
+
+        System.out.println("minCount\tbits\tcontexts\tlistBytes\ttableBytes\tperplexity");
+        int[] minCounts = {1, 2, 3, 5, 10};
+        for (int minCount : minCounts) {
+            report(windowLength, trainFile, heldOut, minCount, 0, maxBytes);
+        }
+        report(windowLength, trainFile, heldOut, 1, 16, maxBytes);
+        report(windowLength, trainFile, heldOut, 1, 8, maxBytes);
+    }
+
+    // Trains a model, prunes and quantizes it, and prints one line of the report.
+    private static void report(int windowLength, String trainFile, String heldOut,
+                               int minCount, int bits, long maxBytes) {
+        LanguageModel lm = new LanguageModel(windowLength, 20);
+        lm.setCompiledGeneration(true);
+        lm.train(trainFile);
+        lm.prune(minCount, minCount);
+        lm.pruneToBudget(maxBytes);
+        lm.setQuantization(bits);
+        System.out.println(minCount + "\t" + bits + "\t" + lm.CharDataMap.size() + "\t"
+                           + (lm.estimatedSize() - lm.tableSize()) + "\t" + lm.tableSize() + "\t"
+                           + lm.evaluate(heldOut, UNSEEN_PROBABILITY).perplexity());
+    }
+}
@@ -0,0 +1,239 @@
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/** Parses all the whitespace-separated numbers of a text, as In.readAllInts,
+ *  readAllLongs and readAllDoubles do, without creating a string per token.
+ *  Short, plain tokens are parsed directly from the characters of the text;
+ *  any other token (very long, non-ASCII digits, hexadecimal doubles, or not a
+ *  number at all) is handed to Integer.parseInt, Long.parseLong or
+ *  Double.parseDouble, so the results and the exceptions are exactly theirs.
+ *  Large texts are split at whitespace into chunks that are parsed in parallel. */
+public class NumberParser {
+
+    // Texts shorter than this are parsed in one chunk
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    // The kinds of numbers that can be parsed
+    private static final int INT = 0;
+    private static final int LONG = 1;
+    private static final int DOUBLE = 2;
+
+    // The exact powers of ten that a double can hold
+    private static final double[] POWERS_OF_TEN = new double[23];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    // The numbers parsed from one chunk of the text, or the exception that stopped it
+    private static class Chunk {
+        long[] longs = new long[16];
+        double[] doubles;
+        int size;
+        RuntimeException error;
+    }
+
+    /** Returns the integers in the given text. */
+    public static int[] parseInts(CharSequence text) {
+        Chunk[] chunks = parse(text, INT);
+        int[] vals = new int[total(chunks)];
+        int n = 0;
+        for (Chunk chunk : chunks) {
+            for (int i = 0; i < chunk.size; i++) {
+                vals[n++] = (int) chunk.longs[i];
+            }
+        }
+        return vals;
+    }
+
+    /** Returns the longs in the given text. */
+    public static long[] parseLongs(CharSequence text) {
+        Chunk[] chunks = parse(text, LONG);
+        long[] vals = new long[total(chunks)];
+        int n = 0;
+        for (Chunk chunk : chunks) {
+            System.arraycopy(chunk.longs, 0, vals, n, chunk.size);
+            n += chunk.size;
+        }
+        return vals;
+    }
+
+    /** Returns the doubles in the given text. */
+    public static double[] parseDoubles(CharSequence text) {
+        Chunk[] chunks = parse(text, DOUBLE);
+        double[] vals = new double[total(chunks)];
+        int n = 0;
+        for (Chunk chunk : chunks) {
+            System.arraycopy(chunk.doubles, 0, vals, n, chunk.size);
+            n += chunk.size;
+        }
+        return vals;
+    }
+
+    // Returns the number of numbers in the given chunks, or throws the exception
+    // of the first chunk that stopped on a token that is not a number.
+    private static int total(Chunk[] chunks) {
+        int total = 0;
+        for (Chunk chunk : chunks) {
+            if (chunk.error != null) {
+                throw chunk.error;
+            }
+            total += chunk.size;
+        }
+        return total;
+    }
+
+    // Splits the given text into chunks that end at whitespace, and parses them in parallel.
+    private static Chunk[] parse(CharSequence text, int kind) {
+        int n = text.length();
+        int chunks = Math.max(1, Math.min(n / CHUNK_SIZE, 4 * Runtime.getRuntime().availableProcessors()));
+        int[] bounds = new int[chunks + 1];
+        bounds[chunks] = n;
+        for (int c = 1; c < chunks; c++) {
+            int b = Math.max(bounds[c - 1], (int) ((long) n * c / chunks));
+            while (b < n && !Character.isWhitespace(text.charAt(b))) {
+                b++;
+            }
+            bounds[c] = b;
+        }
+        Chunk[] result = new Chunk[chunks];
+        IntStream.range(0, chunks).parallel()
+            .forEach(c -> result[c] = parse(text, bounds[c], bounds[c + 1], kind));
+        return result;
+    }
+
+    // Parses the numbers between the given positions of the given text.
+    private static Chunk parse(CharSequence text, int from, int to, int kind) {
+        Chunk chunk = new Chunk();
+        if (kind == DOUBLE) {
+            chunk.doubles = new double[16];
+        }
+        int i = from;
+        try {
+            while (true) {
+                while (i < to && Character.isWhitespace(text.charAt(i))) {
+                    i++;
+                }
+                if (i == to) {
+                    return chunk;
+                }
+                int start = i;
+                while (i < to && !Character.isWhitespace(text.charAt(i))) {
+                    i++;
+                }
+                if (chunk.size == chunk.longs.length && kind != DOUBLE) {
+                    chunk.longs = Arrays.copyOf(chunk.longs, 2 * chunk.size);
+                }
+                if (kind == DOUBLE) {
+                    if (chunk.size == chunk.doubles.length) {
+                        chunk.doubles = Arrays.copyOf(chunk.doubles, 2 * chunk.size);
+                    }
+                    chunk.doubles[chunk.size++] = parseDouble(text, start, i);
+                } else {
+                    chunk.longs[chunk.size++] = parseInteger(text, start, i, kind);
+                }
+            }
+        } catch (RuntimeException e) {
+            chunk.error = e;
+            return chunk;
+        }
+    }
+
+    // Parses the integer between the given positions of the given text. Tokens of
+    // up to 9 (int) or 18 (long) ASCII digits cannot overflow and are parsed here.
+    private static long parseInteger(CharSequence text, int start, int end, int kind) {
+        int i = start;
+        boolean negative = false;
+        char first = text.charAt(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+        }
+        int digits = end - i;
+        if (digits > 0 && digits <= ((kind == INT) ? 9 : 18)) {
+            long value = 0;
+            for (; i < end; i++) {
+                char c = text.charAt(i);
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                value = value * 10 + (c - '0');
+            }
+            if (i == end) {
+                return negative ? -value : value;
+            }
+        }
+        String token = text.subSequence(start, end).toString();
+        return (kind == INT) ? Integer.parseInt(token) : Long.parseLong(token);
+    }
+
+    // Parses the double between the given positions of the given text. A plain decimal
+    // token whose digits fit exactly in a double, with a power of ten that also does,
+    // is computed with a single (correctly rounded) multiplication or division,
+    // which gives the same double as Double.parseDouble.
+    private static double parseDouble(CharSequence text, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        char first = text.charAt(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean point = false;
+        boolean valid = i < end;
+        for (; i < end && valid; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (mantissa > 0 || c != '0') {
+                    digits++;
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (point) {
+                    exponent--;
+                }
+                valid = digits <= 15;
+            } else if (c == '.' && !point) {
+                point = true;
+            } else if ((c == 'e' || c == 'E') && i > start && i + 1 < end) {
+                int e = 0;
+                boolean negativeExponent = false;
+                int j = i + 1;
+                if (text.charAt(j) == '-' || text.charAt(j) == '+') {
+                    negativeExponent = text.charAt(j) == '-';
+                    j++;
+                }
+                valid = j < end && end - j <= 3;
+                for (; j < end && valid; j++) {
+                    char d = text.charAt(j);
+                    valid = d >= '0' && d <= '9';
+                    e = e * 10 + (d - '0');
+                }
+                exponent += negativeExponent ? -e : e;
+                i = end;
+                break;
+            } else {
+                valid = false;
+            }
+        }
+        // Requires at least one digit, and an exact power of ten
+        boolean hasDigit = false;
+        for (int j = start; j < end && !hasDigit; j++) {
+            char c = text.charAt(j);
+            hasDigit = c >= '0' && c <= '9';
+            if (c == 'e' || c == 'E') {
+                break;
+            }
+        }
+        if (valid && hasDigit && Math.abs(exponent) < POWERS_OF_TEN.length) {
+            double value = (exponent < 0) ? mantissa / POWERS_OF_TEN[-exponent]
+                                          : mantissa * POWERS_OF_TEN[exponent];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(text.subSequence(start, end).toString());
+    }
+}
@@ -0,0 +1,171 @@
+import java.util.Map;
+import java.util.Random;
+
+/** A read-only copy of a trained language model, stored outside the Java heap.
+ *  The windows live in an open-addressing hash table, and the characters and
+ *  cumulative probabilities of their lists in a second region, both made of direct
+ *  byte buffers (see OffHeapRecords) addressed with longs, so either region can
+ *  grow well beyond 2 GB. The copy is built from a model trained on the heap, so
+ *  building it does not lower the peak heap: the saving comes only once the source
+ *  model (with its millions of small objects) is no longer referenced and has been
+ *  collected, after which the heap stays tiny however large the model is.
+ *  Generating from this copy gives the same texts as the (unsmoothed) model. */
+public class OffHeapModel {
+
+    // The layout of a slot of the hash table: the window's hash code, the length of
+    // its list, the number of the list's first entry in the distributions region,
+    // then the window's chars. An empty slot has a length of 0.
+    private static final int HASH = 0;
+    private static final int LENGTH = 4;
+    private static final int OFFSET = 8;
+    private static final int KEY = 16;
+
+    // The layout of an entry of the distributions region: a char and its cp
+    private static final int CHAR = 0;
+    private static final int CP = 2;
+    private static final int ENTRY_BYTES = 2 + 8;
+
+    // The hash table of windows, and its number of slots (a power of two) minus one
+    private final OffHeapRecords table;
+    private final long mask;
+
+    // The characters and cumulative probabilities of all the lists
+    private final OffHeapRecords distributions;
+
+    // The window length used in this model.
+    private final int windowLength;
+
+    // The random number generator used by this model.
+    private final Random randomGenerator;
+
+    /** Copies the given trained model off the heap. Generating texts from the copy
+     *  with the given seed gives the same texts as the model with that seed. Drop
+     *  every reference to the model afterwards, or the heap holds both. */
+    public OffHeapModel(LanguageModel model, int seed) {
+        this(model, new Random(seed), OffHeapRecords.MAX_CHUNK_BYTES);
+    }
+
+    /** Copies the given trained model off the heap. */
+    public OffHeapModel(LanguageModel model) {
+        this(model, new Random(), OffHeapRecords.MAX_CHUNK_BYTES);
+    }
+
+    /** Copies the given trained model off the heap, as OffHeapModel(model, seed)
+     *  does, into buffers of at most the given number of bytes (for testing). */
+    OffHeapModel(LanguageModel model, int seed, int maxBufferBytes) {
+        this(model, new Random(seed), maxBufferBytes);
+    }
+
+    private OffHeapModel(LanguageModel model, Random randomGenerator, int maxBufferBytes) {
+        this.randomGenerator = randomGenerator;
+        windowLength = model.windowLength;
+        long slots = Long.highestOneBit(Math.max(1, model.CharDataMap.size()) * 2L - 1) * 2;
+        mask = slots - 1;
+        long chars = 0;
+        for (List probs : model.CharDataMap.values()) {
+            chars += probs.getSize();
+        }
+        int slotBytes = KEY + 2 * windowLength;
+        table = new OffHeapRecords(slots, slotBytes, maxBufferBytes);
+        distributions = new OffHeapRecords(chars, ENTRY_BYTES, maxBufferBytes);
+
+        long entry = 0;
+        for (Map.Entry<String, List> mapEntry : model.CharDataMap.entrySet()) {
+            String window = mapEntry.getKey();
+            List probs = mapEntry.getValue();
+            if (probs.getSize() == 0) {
+                continue;
+            }
+            int hash = window.hashCode();
+            long slot = spread(hash) & mask;
+            while (table.getInt(slot, LENGTH) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table.putInt(slot, HASH, hash);
+            table.putInt(slot, LENGTH, probs.getSize());
+            table.putLong(slot, OFFSET, entry);
+            for (int i = 0; i < windowLength; i++) {
+                table.putChar(slot, KEY + 2 * i, window.charAt(i));
+            }
+            ListIterator itr = probs.listIterator(0);
+            while (itr.hasNext()) {
+                CharData cd = itr.next();
+                distributions.putChar(entry, CHAR, cd.chr);
+                distributions.putDouble(entry, CP, cd.cp);
+                entry++;
+            }
+        }
+    }
+
+    /** Returns the number of off-heap bytes used by this model. */
+    public long sizeInBytes() {
+        return table.sizeInBytes() + distributions.sizeInBytes();
+    }
+
+    // Mixes all the bits of a window's hash code into the low bits of a slot number.
+    // The low bits of the hash code of a short string depend on its last characters
+    // only, so masking it directly would put similar windows in runs of slots.
+    private static long spread(int hash) {
+        long mixed = hash * 0x9E3779B97F4A7C15L;
+        return mixed ^ (mixed >>> 32);
+    }
+
+    // Returns the slot of the window that ends at the given position of the given
+    // text, or -1 if the window is not in this model.
+    private long find(CharSequence text, int end) {
+        int start = end - windowLength;
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        long slot = spread(hash) & mask;
+        while (true) {
+            if (table.getInt(slot, LENGTH) == 0) {
+                return -1;
+            }
+            if (table.getInt(slot, HASH) == hash && sameKey(slot, text, start)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    // Checks if the window stored in the given slot equals the window that starts
+    // at the given position of the given text.
+    private boolean sameKey(long slot, CharSequence text, int start) {
+        for (int i = 0; i < windowLength; i++) {
+            if (table.getChar(slot, KEY + 2 * i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Generates a random text, based on the probabilities of the copied model.
+     * @param initialText - text to start with.
+     * @param textLength - the number of characters to generate
+     * @return the generated text
+     */
+    public String generate(String initialText, int textLength) {
+        if (initialText.length() < windowLength) {
+            return initialText;
+        }
+        StringBuilder generatedText = new StringBuilder(initialText);
+        int targetLength = initialText.length() + textLength;
+        while (generatedText.length() < targetLength) {
+            long slot = find(generatedText, generatedText.length());
+            if (slot < 0) {
+                break;
+            }
+            double r = randomGenerator.nextDouble();
+            long entry = table.getLong(slot, OFFSET);
+            long last = entry + table.getInt(slot, LENGTH) - 1;
+            while (entry < last && r >= distributions.getDouble(entry, CP)) {
+                entry++;
+            }
+            generatedText.append(distributions.getChar(entry, CHAR));
+        }
+        return generatedText.toString();
+    }
+}
@@ -0,0 +1,103 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/** A region of fixed-size records stored outside the Java heap, addressed by a long
+ *  record number, so it can hold more than the 2 GB of a single ByteBuffer. The
+ *  records are split into chunks of a power-of-two number of records, each chunk in
+ *  a direct byte buffer of its own; a record never straddles two chunks. The
+ *  fields of a record are read and written at a byte position within it. */
+public class OffHeapRecords {
+
+    // The largest size of a chunk, in bytes
+    public static final int MAX_CHUNK_BYTES = 1 << 30;
+
+    // The chunks, and the size of a record in bytes
+    private final ByteBuffer[] chunks;
+    private final int recordBytes;
+
+    // The number of records in a chunk (1 << chunkShift), and that number minus one
+    private final int chunkShift;
+    private final long chunkMask;
+
+    /** Allocates a region of the given number of records of the given size, all
+     *  filled with zeros. */
+    public OffHeapRecords(long records, int recordBytes) {
+        this(records, recordBytes, MAX_CHUNK_BYTES);
+    }
+
+    /** Allocates a region of the given number of records of the given size, in chunks
+     *  of at most the given number of bytes (at least one record each). */
+    OffHeapRecords(long records, int recordBytes, int maxChunkBytes) {
+        this.recordBytes = recordBytes;
+        chunkShift = 31 - Integer.numberOfLeadingZeros(Math.max(1, maxChunkBytes / recordBytes));
+        chunkMask = (1L << chunkShift) - 1;
+        long chunkCount = (records + chunkMask) >>> chunkShift;
+        if (chunkCount > Integer.MAX_VALUE) {
+            throw new IllegalStateException("too many records for an off-heap region: " + records);
+        }
+        chunks = new ByteBuffer[(int) chunkCount];
+        for (int c = 0; c < chunks.length; c++) {
+            long inChunk = Math.min(chunkMask + 1, records - ((long) c << chunkShift));
+            chunks[c] = ByteBuffer.allocateDirect((int) inChunk * recordBytes).order(ByteOrder.nativeOrder());
+        }
+    }
+
+    // Returns the chunk of the given record.
+    private ByteBuffer chunk(long record) {
+        return chunks[(int) (record >>> chunkShift)];
+    }
+
+    // Returns the position, in its chunk, of the given field of the given record.
+    private int position(long record, int field) {
+        return (int) (record & chunkMask) * recordBytes + field;
+    }
+
+    /** Returns the int at the given byte position of the given record. */
+    public int getInt(long record, int field) {
+        return chunk(record).getInt(position(record, field));
+    }
+
+    /** Writes an int at the given byte position of the given record. */
+    public void putInt(long record, int field, int value) {
+        chunk(record).putInt(position(record, field), value);
+    }
+
+    /** Returns the long at the given byte position of the given record. */
+    public long getLong(long record, int field) {
+        return chunk(record).getLong(position(record, field));
+    }
+
+    /** Writes a long at the given byte position of the given record. */
+    public void putLong(long record, int field, long value) {
+        chunk(record).putLong(position(record, field), value);
+    }
+
+    /** Returns the char at the given byte position of the given record. */
+    public char getChar(long record, int field) {
+        return chunk(record).getChar(position(record, field));
+    }
+
+    /** Writes a char at the given byte position of the given record. */
+    public void putChar(long record, int field, char value) {
+        chunk(record).putChar(position(record, field), value);
+    }
+
+    /** Returns the double at the given byte position of the given record. */
+    public double getDouble(long record, int field) {
+        return chunk(record).getDouble(position(record, field));
+    }
+
+    /** Writes a double at the given byte position of the given record. */
+    public void putDouble(long record, int field, double value) {
+        chunk(record).putDouble(position(record, field), value);
+    }
+
+    /** Returns the number of off-heap bytes used by this region. */
+    public long sizeInBytes() {
+        long bytes = 0;
+        for (ByteBuffer chunk : chunks) {
+            bytes += chunk.capacity();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,197 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/** Decompresses a multi-member gzip file whose members record their own size
+ *  (the BGZF layout written by bgzip: a "BC" extra field in every header), by
+ *  inflating several members in parallel while the reader consumes them in order.
+ *  At most a few members are held decompressed at any time. Use open to read
+ *  any gzip file: files without member sizes are read with a GZIPInputStream. */
+public class ParallelGzipInputStream extends InputStream {
+
+    // The fixed part of a gzip header, and the flag that announces an extra field
+    private static final int HEADER_BYTES = 12;
+    private static final int FEXTRA = 4;
+
+    // The threads that inflate the members, shared by all the streams
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+    private static final ExecutorService INFLATERS = Executors.newFixedThreadPool(THREADS, r -> {
+        Thread thread = new Thread(r, "inflater");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // The compressed members
+    private final DataInputStream in;
+
+    // The members being inflated, in order (at most 2 per thread)
+    private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+    private boolean endOfMembers;
+
+    // The inflated member being read, and the position of the next byte in it
+    private byte[] current = new byte[0];
+    private int pos;
+
+    /** Constructs a stream that inflates the members read from the given stream. */
+    public ParallelGzipInputStream(InputStream in) {
+        this.in = new DataInputStream(in);
+    }
+
+    /** Opens the given gzip file: in parallel if its members record their sizes,
+     *  and with a GZIPInputStream otherwise. */
+    public static InputStream open(String fileName) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(new FileInputStream(fileName), 1 << 16);
+        in.mark(HEADER_BYTES + 6);
+        byte[] header = new byte[HEADER_BYTES + 6];
+        int n = in.readNBytes(header, 0, header.length);
+        in.reset();
+        boolean sized = n == header.length && (header[3] & FEXTRA) != 0
+            && header[12] == 'B' && header[13] == 'C' && header[14] == 2 && header[15] == 0;
+        return sized ? new ParallelGzipInputStream(in) : new GZIPInputStream(in, 1 << 16);
+    }
+
+    /** Reads the next byte, or returns -1 at the end of the last member. */
+    public int read() throws IOException {
+        if (pos == current.length && !nextMember()) {
+            return -1;
+        }
+        return current[pos++] & 0xff;
+    }
+
+    /** Reads up to len bytes into the given array, and returns their number (or -1
+     *  at the end of the last member). */
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (pos == current.length && !nextMember()) {
+            return -1;
+        }
+        int n = Math.min(len, current.length - pos);
+        System.arraycopy(current, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    // Moves to the next non-empty inflated member, keeping the inflaters busy.
+    // Returns false if there are no more members.
+    private boolean nextMember() throws IOException {
+        while (true) {
+            while (!endOfMembers && pending.size() < 2 * THREADS) {
+                byte[] member = readMember();
+                if (member == null) {
+                    endOfMembers = true;
+                } else {
+                    pending.add(INFLATERS.submit(() -> inflate(member)));
+                }
+            }
+            if (pending.isEmpty()) {
+                return false;
+            }
+            try {
+                current = pending.remove().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while inflating", e);
+            } catch (ExecutionException e) {
+                throw new IOException("corrupt gzip member", e.getCause());
+            }
+            pos = 0;
+            if (current.length > 0) {
+                return true;
+            }
+        }
+    }
+
+    // Reads the next compressed member, or returns null at the end of the input.
+    private byte[] readMember() throws IOException {
+        byte[] header = new byte[HEADER_BYTES];
+        int n = in.readNBytes(header, 0, HEADER_BYTES);
+        if (n == 0) {
+            return null;
+        }
+        if (n < HEADER_BYTES || (header[0] & 0xff) != 0x1f || (header[1] & 0xff) != 0x8b
+            || header[2] != 8 || (header[3] & FEXTRA) == 0) {
+            throw new IOException("not a gzip member with an extra field");
+        }
+        int extraLength = (header[10] & 0xff) | (header[11] & 0xff) << 8;
+        byte[] extra = new byte[extraLength];
+        in.readFully(extra);
+        int size = -1;
+        for (int i = 0; i + 4 <= extraLength; ) {
+            int length = (extra[i + 2] & 0xff) | (extra[i + 3] & 0xff) << 8;
+            if (extra[i] == 'B' && extra[i + 1] == 'C' && length == 2) {
+                size = ((extra[i + 4] & 0xff) | (extra[i + 5] & 0xff) << 8) + 1;
+            }
+            i += 4 + length;
+        }
+        if (size < 0) {
+            throw new IOException("gzip member without a BC (member size) field");
+        }
+        byte[] member = new byte[size - HEADER_BYTES - extraLength];
+        try {
+            in.readFully(member);
+        } catch (EOFException e) {
+            throw new IOException("truncated gzip member", e);
+        }
+        return member;
+    }
+
+    // Inflates the given member (its deflated data, then the CRC-32 and the size of
+    // the inflated data), and checks the result against its CRC-32.
+    private static byte[] inflate(byte[] member) throws IOException, DataFormatException {
+        int trailer = member.length - 8;
+        int crc = readInt(member, trailer);
+        int size = readInt(member, trailer + 4);
+        byte[] data = new byte[size];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(member, 0, trailer);
+            int n = 0;
+            while (n < size && !inflater.finished()) {
+                int inflated = inflater.inflate(data, n, size - n);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += inflated;
+            }
+            if (n != size) {
+                throw new IOException("gzip member inflates to " + n + " bytes, expected " + size);
+            }
+        } finally {
+            inflater.end();
+        }
+        CRC32 check = new CRC32();
+        check.update(data);
+        if ((int) check.getValue() != crc) {
+            throw new IOException("gzip member fails its CRC check");
+        }
+        return data;
+    }
+
+    // Returns the little-endian int at the given position of the given array.
+    private static int readInt(byte[] b, int i) {
+        return (b[i] & 0xff) | (b[i + 1] & 0xff) << 8 | (b[i + 2] & 0xff) << 16 | (b[i + 3] & 0xff) << 24;
+    }
+
+    /** Closes this stream and the underlying stream. */
+    public void close() throws IOException {
+        for (Future<byte[]> member : pending) {
+            member.cancel(true);
+        }
+        pending.clear();
+        in.close();
+    }
+}
@@ -0,0 +1,97 @@
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/** Reads a source of characters ahead of its consumer, on a separate thread.
+ *  The reader thread fills a fixed ring of chunk buffers: while the consumer
+ *  processes one chunk, the next ones are being read (and decoded), so the
+ *  latency of the source is overlapped with the work on the characters.
+ *  The consumer takes chunks with next, and hands each one back with release
+ *  once it is done with it. */
+public class PrefetchReader implements AutoCloseable {
+
+    // Marks the end of the source in the queue of full chunks
+    private static final CharBuffer END = CharBuffer.allocate(0);
+
+    // The chunks that are free to be filled, and those that are filled and not yet taken
+    private final ArrayBlockingQueue<CharBuffer> free;
+    private final ArrayBlockingQueue<CharBuffer> full;
+
+    // The thread that reads the source, and the exception that stopped it (if any)
+    private final Thread thread;
+    private volatile IOException error;
+
+    /** Starts reading the given source, in chunks of the given number of characters,
+     *  at most the given number of chunks ahead of the consumer. */
+    public PrefetchReader(Readable source, int chunkSize, int chunks) {
+        free = new ArrayBlockingQueue<CharBuffer>(chunks);
+        full = new ArrayBlockingQueue<CharBuffer>(chunks + 1);
+        for (int i = 0; i < chunks; i++) {
+            free.add(CharBuffer.allocate(chunkSize));
+        }
+        thread = new Thread(() -> readAhead(source), "prefetch");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Fills free chunks from the source and queues them, until the source ends.
+    private void readAhead(Readable source) {
+        try {
+            boolean ended = false;
+            while (!ended) {
+                CharBuffer chunk = free.take();
+                chunk.clear();
+                while (chunk.hasRemaining()) {
+                    if (source.read(chunk) < 0) {
+                        ended = true;
+                        break;
+                    }
+                }
+                chunk.flip();
+                if (chunk.hasRemaining()) {
+                    full.put(chunk);
+                } else {
+                    free.put(chunk);
+                }
+            }
+        } catch (IOException e) {
+            error = e;
+        } catch (RuntimeException e) {
+            error = new IOException(e);
+        } catch (InterruptedException e) {
+            // closed by the consumer
+        } finally {
+            full.offer(END);
+        }
+    }
+
+    /** Returns the next chunk of characters (from its position to its limit), waiting
+     *  for it to be read if needed, or null at the end of the source. */
+    public CharBuffer next() throws IOException {
+        CharBuffer chunk;
+        try {
+            chunk = full.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for input", e);
+        }
+        if (chunk == END) {
+            full.offer(END);
+            if (error != null) {
+                throw error;
+            }
+            return null;
+        }
+        return chunk;
+    }
+
+    /** Hands the given chunk, returned by next, back to the reader thread. */
+    public void release(CharBuffer chunk) {
+        free.offer(chunk);
+    }
+
+    /** Stops the reader thread. */
+    public void close() {
+        thread.interrupt();
+    }
+}
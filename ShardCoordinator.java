@@ -0,0 +1,214 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Random;
+
+/** Trains and queries a language model whose windows are split across several
+ *  worker processes (see ShardWorker), so the model is not limited by the memory
+ *  of one JVM. Each window is owned by the shard given by its hash code.
+ *  Training sends the windows of the corpus to their owners in batches;
+ *  generation asks the owner of the current window for the next character.
+ *  The random numbers are drawn here, so with the same seed a sharded model
+ *  generates the same texts as a LanguageModel trained on the same corpus.
+ *  Usage: java ShardCoordinator shards windowLength initialText textLength fileName */
+public class ShardCoordinator {
+
+    // The number of windows sent to a worker in one request
+    private static final int BATCH_SIZE = 8192;
+
+    // The connections to the workers, one per shard
+    private final Socket[] sockets;
+    private final DataInputStream[] ins;
+    private final DataOutputStream[] outs;
+
+    // The worker processes started by launchLocal (null otherwise)
+    private Process[] processes;
+
+    // The window length used in this model.
+    private final int windowLength;
+
+    // The random number generator used by this model.
+    private final Random randomGenerator;
+
+    /** Constructs a coordinator for the workers listening on the given loopback
+     *  ports, for windows of the given length. */
+    public ShardCoordinator(int windowLength, int seed, int[] ports) throws IOException {
+        this.windowLength = windowLength;
+        randomGenerator = new Random(seed);
+        sockets = new Socket[ports.length];
+        ins = new DataInputStream[ports.length];
+        outs = new DataOutputStream[ports.length];
+        for (int i = 0; i < ports.length; i++) {
+            sockets[i] = new Socket(InetAddress.getLoopbackAddress(), ports[i]);
+            sockets[i].setTcpNoDelay(true);
+            ins[i] = new DataInputStream(new BufferedInputStream(sockets[i].getInputStream(), 1 << 16));
+            outs[i] = new DataOutputStream(new BufferedOutputStream(sockets[i].getOutputStream(), 1 << 16));
+        }
+    }
+
+    /** Starts the given number of worker JVMs on this machine, and returns a
+     *  coordinator connected to them. Closing the coordinator stops the workers.
+     *  If a worker cannot be started or connected to, the workers already started
+     *  are destroyed and an IOException is thrown. */
+    public static ShardCoordinator launchLocal(int shards, int windowLength, int seed) throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        String classPath = System.getProperty("java.class.path");
+        Process[] processes = new Process[shards];
+        int[] ports = new int[shards];
+        boolean launched = false;
+        try {
+            for (int i = 0; i < shards; i++) {
+                processes[i] = new ProcessBuilder(java, "-cp", classPath, "ShardWorker", "" + windowLength)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+                BufferedReader reader = new BufferedReader(new InputStreamReader(processes[i].getInputStream()));
+                String line = reader.readLine();
+                if (line == null) {
+                    throw new IOException("worker " + i + " exited before printing its port");
+                }
+                try {
+                    ports[i] = Integer.parseInt(line.trim());
+                } catch (NumberFormatException e) {
+                    throw new IOException("worker " + i + " printed \"" + line + "\" instead of its port");
+                }
+            }
+            ShardCoordinator coordinator = new ShardCoordinator(windowLength, seed, ports);
+            coordinator.processes = processes;
+            launched = true;
+            return coordinator;
+        } finally {
+            if (!launched) {
+                for (Process process : processes) {
+                    if (process != null) {
+                        process.destroyForcibly();
+                    }
+                }
+            }
+        }
+    }
+
+    // Returns the shard that owns the window that ends at the given position of the given text.
+    private int owner(CharSequence text, int end) {
+        int hash = 0;
+        for (int i = end - windowLength; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        return Math.floorMod(hash ^ (hash >>> 16), sockets.length);
+    }
+
+    /** Builds the sharded model from the text in the given file (the corpus), and
+     *  returns the number of windows owned by each shard. */
+    public int[] train(String fileName) throws IOException {
+        CharSequence text = In.map(fileName);
+        int shards = sockets.length;
+        // The windows waiting to be sent to each shard, and their number
+        char[][] batches = new char[shards][BATCH_SIZE * (windowLength + 1)];
+        int[] pending = new int[shards];
+        for (int i = 0; i <= text.length() - windowLength - 1; i++) {
+            int shard = owner(text, i + windowLength);
+            int offset = pending[shard] * (windowLength + 1);
+            for (int j = 0; j <= windowLength; j++) {
+                batches[shard][offset + j] = text.charAt(i + j);
+            }
+            pending[shard]++;
+            if (pending[shard] == BATCH_SIZE) {
+                send(shard, batches[shard], pending[shard]);
+                pending[shard] = 0;
+            }
+        }
+        for (int shard = 0; shard < shards; shard++) {
+            send(shard, batches[shard], pending[shard]);
+            outs[shard].writeByte(ShardWorker.FREEZE);
+            outs[shard].flush();
+        }
+        int[] sizes = new int[shards];
+        for (int shard = 0; shard < shards; shard++) {
+            sizes[shard] = ins[shard].readInt();
+        }
+        return sizes;
+    }
+
+    // Sends the given batch of windows (each followed by its next character) to the given shard.
+    private void send(int shard, char[] batch, int n) throws IOException {
+        if (n == 0) {
+            return;
+        }
+        DataOutputStream out = outs[shard];
+        out.writeByte(ShardWorker.COUNT);
+        out.writeInt(n);
+        for (int i = 0; i < n * (windowLength + 1); i++) {
+            out.writeChar(batch[i]);
+        }
+    }
+
+    /**
+     * Generates a random text, based on the probabilities held by the shards.
+     * @param initialText - text to start with.
+     * @param textLength - the number of characters to generate
+     * @return the generated text
+     */
+    public String generate(String initialText, int textLength) throws IOException {
+        if (initialText.length() < windowLength) {
+            return initialText;
+        }
+        StringBuilder generatedText = new StringBuilder(initialText);
+        int targetLength = initialText.length() + textLength;
+        while (generatedText.length() < targetLength) {
+            int end = generatedText.length();
+            int shard = owner(generatedText, end);
+            DataOutputStream out = outs[shard];
+            out.writeByte(ShardWorker.SAMPLE);
+            for (int i = end - windowLength; i < end; i++) {
+                out.writeChar(generatedText.charAt(i));
+            }
+            out.writeDouble(randomGenerator.nextDouble());
+            out.flush();
+            if (!ins[shard].readBoolean()) {
+                break;
+            }
+            generatedText.append(ins[shard].readChar());
+        }
+        return generatedText.toString();
+    }
+
+    /** Tells the workers to quit, and closes the connections to them. */
+    public void close() throws IOException {
+        for (int shard = 0; shard < sockets.length; shard++) {
+            outs[shard].writeByte(ShardWorker.QUIT);
+            outs[shard].flush();
+            sockets[shard].close();
+        }
+        if (processes != null) {
+            for (Process process : processes) {
+                try {
+                    process.waitFor();
+                } catch (InterruptedException e) {
+                    process.destroy();
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int shards = Integer.parseInt(args[0]);
+        int windowLength = Integer.parseInt(args[1]);
+        String initialText = args[2];
+        int generatedTextLength = Integer.parseInt(args[3]);
+        String fileName = args[4];
+        ShardCoordinator coordinator = launchLocal(shards, windowLength, 20);
+        try {
+            coordinator.train(fileName);
+            System.out.println(coordinator.generate(initialText, generatedTextLength));
+        } finally {
+            coordinator.close();
+        }
+    }
+}
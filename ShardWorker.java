@@ -0,0 +1,114 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+
+/** A worker process that owns one shard of a distributed language model.
+ *  The worker listens on a loopback port (printed on its first line of output),
+ *  accepts one coordinator, and serves its requests until told to quit:
+ *  counting batches of windows, and sampling the next character of a window.
+ *  The worker keeps only the raw counts of its windows, and samples from them
+ *  directly, without computing and storing probabilities. See ShardCoordinator.
+ *  Usage: java ShardWorker windowLength [port] */
+public class ShardWorker {
+
+    // The requests a coordinator can send (see ShardCoordinator). FREEZE ends
+    // training, and is answered with the number of windows of the shard.
+    static final byte COUNT = 1;
+    static final byte FREEZE = 2;
+    static final byte SAMPLE = 3;
+    static final byte QUIT = 4;
+
+    // The windows of the shard owned by this worker, and their counts
+    private final HashMap<String, List> counts = new HashMap<String, List>();
+
+    // The window length used in this model.
+    private final int windowLength;
+
+    /** Constructs a worker for windows of the given length. */
+    public ShardWorker(int windowLength) {
+        this.windowLength = windowLength;
+    }
+
+    /** Serves the requests read from the given stream, until a QUIT request. */
+    public void serve(DataInputStream in, DataOutputStream out) throws IOException {
+        char[] window = new char[windowLength];
+        while (true) {
+            byte request = in.readByte();
+            if (request == COUNT) {
+                // A batch of windows, each followed by the character that follows it
+                int n = in.readInt();
+                for (int i = 0; i < n; i++) {
+                    for (int j = 0; j < windowLength; j++) {
+                        window[j] = in.readChar();
+                    }
+                    char nextChar = in.readChar();
+                    String key = new String(window);
+                    List probs = counts.get(key);
+                    if (probs == null) {
+                        probs = new List();
+                        counts.put(key, probs);
+                    }
+                    probs.update(nextChar);
+                }
+            } else if (request == FREEZE) {
+                out.writeInt(counts.size());
+                out.flush();
+            } else if (request == SAMPLE) {
+                // A window and a random number; replies whether the window is known,
+                // and if so, the character that the random number picks
+                for (int j = 0; j < windowLength; j++) {
+                    window[j] = in.readChar();
+                }
+                double r = in.readDouble();
+                List probs = counts.get(new String(window));
+                out.writeBoolean(probs != null && probs.getSize() > 0);
+                if (probs != null && probs.getSize() > 0) {
+                    out.writeChar(sample(probs, r));
+                }
+                out.flush();
+            } else if (request == QUIT) {
+                return;
+            } else {
+                throw new IOException("unknown request " + request);
+            }
+        }
+    }
+
+    // Returns the first character of the given list of counts whose cumulative
+    // probability is greater than r (or the last one, if there is none). The
+    // cumulative probabilities are summed as LanguageModel.calculateProbabilities
+    // sums them, so the character is the one that LanguageModel.getCharAt picks.
+    private static char sample(List probs, double r) {
+        long total = probs.totalCount();
+        double cumulativeProbability = 0.0;
+        ListIterator itr = probs.listIterator(0);
+        while (itr.hasNext()) {
+            CharData current = itr.next();
+            cumulativeProbability += (double) current.count / total;
+            if (r < cumulativeProbability) {
+                return current.chr;
+            }
+        }
+        return probs.getLast().chr;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int windowLength = Integer.parseInt(args[0]);
+        int port = (args.length > 1) ? Integer.parseInt(args[1]) : 0;
+        try (ServerSocket server = new ServerSocket(port, 1, InetAddress.getLoopbackAddress())) {
+            System.out.println(server.getLocalPort());
+            System.out.flush();
+            try (Socket socket = server.accept()) {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+                new ShardWorker(windowLength).serve(in, out);
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.Random;
+
+/** An approximate language model for unbounded text streams.
+ *  Instead of a map from every window to the exact counts of its characters, the
+ *  model keeps a count-min sketch of the windows and a fixed-size table of the most
+ *  frequent windows (of every length up to the window length, down to the empty
+ *  window), each with the few characters that most often follow it (see
+ *  HeavyHitterTable), so its memory stays fixed no matter how much text is passed
+ *  to train. The sketch estimates how often each window was seen, which decides
+ *  whether a window earns a place in the table. Generated characters are drawn
+ *  among the candidates of the current window only, in proportion to their counts,
+ *  so the errors of the sketch never reach the sampled distributions. */
+public class SketchLanguageModel {
+
+    // The default number of candidate characters kept for each window
+    private static final int DEFAULT_CANDIDATES = 6;
+
+    // The table slots per window whose frequency exceeds epsilon times the trained characters
+    private static final int SLOTS_PER_HEAVY_WINDOW = 4;
+
+    // The estimated counts of the windows
+    private final CountMinSketch sketch;
+
+    // The most frequent windows and their most frequent characters
+    private final HeavyHitterTable table;
+
+    // The window length used in this model.
+    private final int windowLength;
+
+    // The most recent characters of the training stream, and how many were read
+    private final char[] history;
+    private long position;
+
+    // The random number generator used by this model.
+    private final Random randomGenerator;
+
+    /** Constructs an approximate language model with the given window length and
+     *  seed value, which keeps DEFAULT_CANDIDATES characters per window (see below). */
+    public SketchLanguageModel(int windowLength, double epsilon, double delta, int seed) {
+        this(windowLength, epsilon, delta, DEFAULT_CANDIDATES, seed);
+    }
+
+    /** Constructs an approximate language model with the given window length and
+     *  seed value. The estimated counts of the windows are within epsilon times the
+     *  number of trained characters of the true counts, with probability 1 - delta,
+     *  and the table has room for several times 1 / epsilon windows, so the windows
+     *  seen more often than that are kept. Each window keeps the given number of
+     *  candidate characters, whose counts exceed their true counts by at most the
+     *  count of the window divided by the number of candidates. */
+    public SketchLanguageModel(int windowLength, double epsilon, double delta, int candidates, int seed) {
+        if (windowLength < 0) {
+            throw new IllegalArgumentException("window length must not be negative, got " + windowLength);
+        }
+        if (candidates < 1) {
+            throw new IllegalArgumentException("candidates must be positive, got " + candidates);
+        }
+        if (epsilon <= 0 || epsilon >= 1 || delta <= 0 || delta >= 1) {
+            throw new IllegalArgumentException("epsilon and delta must be between 0 and 1");
+        }
+        if (Math.ceil(SLOTS_PER_HEAVY_WINDOW / epsilon) * candidates > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("epsilon " + epsilon + " is too small for " + candidates + " candidates");
+        }
+        this.windowLength = windowLength;
+        sketch = new CountMinSketch(epsilon, delta);
+        table = new HeavyHitterTable((int) Math.ceil(SLOTS_PER_HEAVY_WINDOW / epsilon), candidates);
+        history = new char[windowLength];
+        randomGenerator = new Random(seed);
+    }
+
+    /** Adds the text in the given file to this model. The file is decoded as
+     *  LanguageModel.train(String) decodes it: malformed input is replaced, and a
+     *  file whose name ends with .gz is decompressed. */
+    public void train(String fileName) {
+        try (CharReader in = LanguageModel.open(fileName)) {
+            train(in);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Adds all the text read from the given source to this model. Windows may span
+     *  consecutive calls, so a long stream can be passed in pieces. */
+    public void train(Readable in) throws IOException {
+        CharBuffer buffer = CharBuffer.allocate(1 << 16);
+        while (in.read(buffer) >= 0) {
+            buffer.flip();
+            int n = buffer.remaining();
+            for (int i = 0; i < n; i++) {
+                char c = buffer.get(i);
+                if (position >= windowLength) {
+                    // Counts the windows of every length up to windowLength that end here,
+                    // from the empty window (whose hash is 0)
+                    long window = 0;
+                    for (int length = 0; length <= windowLength; length++) {
+                        if (length > 0) {
+                            window = extendHash(window, history[(int) ((position - length) % windowLength)]);
+                        }
+                        table.add(window, c, sketch.add(window));
+                    }
+                }
+                if (windowLength > 0) {
+                    history[(int) (position % windowLength)] = c;
+                }
+                position++;
+            }
+            buffer.clear();
+        }
+    }
+
+    // Returns the hash of a window made of the given character followed by the window
+    // with the given hash (0 for the empty window). Windows are hashed from their
+    // last character back, so the hashes of all the windows that end at the same
+    // position are computed in one pass.
+    private static long extendHash(long hash, char c) {
+        return (hash + c) * 0x9E3779B97F4A7C15L;
+    }
+
+    /** Returns the number of bytes used by the counts of this model. This number
+     *  does not depend on the amount of trained text. */
+    public long sizeInBytes() {
+        return sketch.sizeInBytes() + table.sizeInBytes();
+    }
+
+    /**
+     * Generates a random text, based on the counts learned during training. Each
+     * character is drawn from the candidates of the longest window, among those that
+     * end the text, that is in the table of frequent windows (backing off to shorter
+     * windows when a rare window was not kept, and at last to the empty window,
+     * whose candidates are the most frequent characters of the text).
+     * @param initialText - text to start with.
+     * @param textLength - the number of characters to generate
+     * @return the generated text
+     */
+    public String generate(String initialText, int textLength) {
+        if (initialText.length() < windowLength) {
+            return initialText;
+        }
+        StringBuilder generatedText = new StringBuilder(initialText);
+        int targetLength = initialText.length() + textLength;
+        int[] slots = new int[windowLength + 1];
+        while (generatedText.length() < targetLength) {
+            long window = 0;
+            for (int length = 0; length <= windowLength; length++) {
+                if (length > 0) {
+                    window = extendHash(window, generatedText.charAt(generatedText.length() - length));
+                }
+                slots[length] = table.find(window);
+            }
+            double r = randomGenerator.nextDouble();
+            int chr = -1;
+            for (int length = windowLength; length >= 0 && chr < 0; length--) {
+                if (slots[length] >= 0) {
+                    chr = table.sample(slots[length], r);
+                }
+            }
+            if (chr < 0) {
+                break;
+            }
+            generatedText.append((char) chr);
+        }
+        return generatedText.toString();
+    }
+
+    public static void main(String[] args) {
+        int windowLength = Integer.parseInt(args[0]);
+        String initialText = args[1];
+        int generatedTextLength = Integer.parseInt(args[2]);
+        double epsilon = Double.parseDouble(args[3]);
+        String fileName = args[4];
+        SketchLanguageModel lm = new SketchLanguageModel(windowLength, epsilon, 0.01, 20);
+        lm.train(fileName);
+        System.out.println(lm.generate(initialText, generatedTextLength));
+    }
+}
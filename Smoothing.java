@@ -0,0 +1,20 @@
+/** The smoothing methods a language model can apply to its probabilities.
+ *  A smoothed model moves some probability mass from the characters seen after
+ *  a window to the distribution of a shorter window, so it can also generate
+ *  (and score) characters and windows that were never seen in training. */
+public enum Smoothing {
+
+    // Maximum-likelihood probabilities, no smoothing
+    NONE,
+
+    // Adds k to the count of every character of the vocabulary
+    ADD_K,
+
+    // Subtracts a discount d from every count, and interpolates with the
+    // distribution of the shorter window
+    ABSOLUTE_DISCOUNTING,
+
+    // Like ABSOLUTE_DISCOUNTING, but the shorter windows count the number of
+    // distinct contexts a character follows rather than its occurrences
+    KNESER_NEY
+}
@@ -0,0 +1,91 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/** Iterates over the lines or the whitespace-separated tokens of a text without
+ *  allocating: next returns this iterator itself, which is a view of the
+ *  current line or token until next is called again. Use toString to keep a copy.
+ *  Lines end as in In.readLine, and tokens are separated as in In.readString. */
+public class SpanIterator implements Iterator<CharSequence>, CharSequence {
+
+    // The iterated text
+    private final CharSequence text;
+
+    // True to iterate over tokens, false to iterate over lines
+    private final boolean tokens;
+
+    // The current span of the text, and the position where the next one starts
+    private int start;
+    private int end;
+    private int next;
+
+    /** Constructs an iterator over the lines (or, if tokens is true, the tokens) of the given text. */
+    public SpanIterator(CharSequence text, boolean tokens) {
+        this.text = text;
+        this.tokens = tokens;
+        if (tokens) {
+            skipWhitespace();
+        }
+    }
+
+    // Moves the start of the next span past any whitespace.
+    private void skipWhitespace() {
+        while (next < text.length() && Character.isWhitespace(text.charAt(next))) {
+            next++;
+        }
+    }
+
+    // Checks if the given character ends a line.
+    private static boolean isLineSeparator(char c) {
+        return c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029' || c == '\u0085';
+    }
+
+    /** Checks if there is another line or token. */
+    public boolean hasNext() {
+        return next < text.length();
+    }
+
+    /** Moves this view to the next line or token, and returns it. */
+    public CharSequence next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("no more " + (tokens ? "tokens" : "lines"));
+        }
+        start = next;
+        end = start;
+        if (tokens) {
+            while (end < text.length() && !Character.isWhitespace(text.charAt(end))) {
+                end++;
+            }
+            next = end;
+            skipWhitespace();
+        } else {
+            while (end < text.length() && !isLineSeparator(text.charAt(end))) {
+                end++;
+            }
+            next = end + 1;
+            if (end < text.length() && text.charAt(end) == '\r' && next < text.length() && text.charAt(next) == '\n') {
+                next++;
+            }
+        }
+        return this;
+    }
+
+    /** Returns the length of the current line or token. */
+    public int length() {
+        return end - start;
+    }
+
+    /** Returns the character at the given index of the current line or token. */
+    public char charAt(int index) {
+        return text.charAt(start + index);
+    }
+
+    /** Returns the characters between the given indexes of the current line or token. */
+    public CharSequence subSequence(int from, int to) {
+        return text.subSequence(start + from, start + to);
+    }
+
+    /** Returns the current line or token, as a new String. */
+    public String toString() {
+        return text.subSequence(start, end).toString();
+    }
+}
@@ -0,0 +1,77 @@
+/** A mutable view of a window of characters inside a longer text, used to look up
+ *  windows in a map with String keys without creating a new String per lookup.
+ *  The hash code of a window key is the hash code of the String with the same
+ *  characters, and a window key equals such a String (but not the other way around),
+ *  which is all that HashMap.get needs. */
+public class WindowKey implements CharSequence {
+
+    // The text that contains the window
+    private CharSequence text;
+
+    // The position and length of the window in the text
+    private int start;
+    private final int length;
+
+    // The hash code of the window (as computed by String.hashCode)
+    private int hash;
+
+    /** Constructs a window key for windows of the given length. */
+    public WindowKey(int length) {
+        this.length = length;
+    }
+
+    /** Moves this key to the window that starts at the given position of the given
+     *  text, and returns this key. */
+    public WindowKey set(CharSequence text, int start) {
+        this.text = text;
+        this.start = start;
+        int h = 0;
+        for (int i = start; i < start + length; i++) {
+            h = 31 * h + text.charAt(i);
+        }
+        hash = h;
+        return this;
+    }
+
+    /** Returns the length of the window. */
+    public int length() {
+        return length;
+    }
+
+    /** Returns the character at the given position of the window. */
+    public char charAt(int index) {
+        return text.charAt(start + index);
+    }
+
+    /** Returns the characters between the given positions of the window. */
+    public CharSequence subSequence(int from, int to) {
+        return text.subSequence(start + from, start + to);
+    }
+
+    /** Returns the hash code of the String with the same characters as the window. */
+    public int hashCode() {
+        return hash;
+    }
+
+    /** Checks if the given object is a String with the same characters as the window. */
+    public boolean equals(Object other) {
+        if (!(other instanceof String)) {
+            return false;
+        }
+        String str = (String) other;
+        if (str.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (str.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the window, as a new String. */
+    public String toString() {
+        return text.subSequence(start, start + length).toString();
+    }
+}
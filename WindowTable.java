@@ -0,0 +1,187 @@
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Map;
+
+/** A read-only table of the windows of a trained language model and of their
+ *  lists, compiled for fast lookups while generating. Instead of a HashMap entry,
+ *  a String and a List of nodes per window, it is made of a few primitive arrays:
+ *  an open-addressing hash table (with linear probing) whose keys are stored
+ *  inline in one char array, and whose values are positions in the compiled
+ *  lists (see Distributions). Looking up the window
+ *  at a position of a text neither creates a string nor follows a pointer. */
+public class WindowTable {
+
+    // The maximal ratio of windows to slots; the table has at least twice as many slots as windows
+    private static final double LOAD_FACTOR = 0.5;
+
+    // The rough heap cost (in bytes) of an array, without its elements
+    private static final int ARRAY_BYTES = 16;
+
+    // The window length of the table's keys
+    private final int windowLength;
+
+    // The slots: the hash code of their window, the position of its list in the
+    // distributions (-1 for an empty slot), the length of the list, and the
+    // window's characters (windowLength chars per slot)
+    private final int[] hashes;
+    private final int[] offsets;
+    private final int[] lengths;
+    private final char[] keys;
+    private final int mask;
+
+    // The characters and cumulative probabilities of all the lists
+    private final Distributions lists;
+
+    // For each slot whose list has a single character (a forced window): the slot
+    // of the window that this character leads to, or -1 if the table does not
+    // contain it. NOT_FORCED for the other slots.
+    private final int[] successors;
+    private static final int NOT_FORCED = -2;
+
+    /** Compiles the given map of windows (of the given length) to their lists,
+     *  whose probabilities must have been computed. */
+    public WindowTable(Map<String, List> map, int windowLength) {
+        this(map, windowLength, 0);
+    }
+
+    /** Compiles the given map of windows (of the given length) to their lists,
+     *  whose probabilities must have been computed and quantized to the given
+     *  number of bits (0, 8 or 16; see Distributions). */
+    public WindowTable(Map<String, List> map, int windowLength, int quantizationBits) {
+        this.windowLength = windowLength;
+        int slots = slots(map.size());
+        mask = slots - 1;
+        hashes = new int[slots];
+        offsets = new int[slots];
+        lengths = new int[slots];
+        keys = new char[slots * windowLength];
+        Arrays.fill(offsets, -1);
+        long total = 0;
+        for (List probs : map.values()) {
+            total += probs.getSize();
+        }
+        if (total > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("model too large for a window table: " + total + " characters");
+        }
+        lists = new Distributions((int) total, quantizationBits);
+        int offset = 0;
+        for (Map.Entry<String, List> entry : map.entrySet()) {
+            String window = entry.getKey();
+            int hash = window.hashCode();
+            int slot = spread(hash) & mask;
+            while (offsets[slot] >= 0) {
+                slot = (slot + 1) & mask;
+            }
+            hashes[slot] = hash;
+            offsets[slot] = offset;
+            window.getChars(0, windowLength, keys, slot * windowLength);
+            lengths[slot] = lists.copy(entry.getValue(), offset);
+            offset += lengths[slot];
+        }
+        // Links each forced window to the window that follows it
+        successors = new int[slots];
+        char[] following = new char[windowLength];
+        CharBuffer followingWindow = CharBuffer.wrap(following);
+        for (int slot = 0; slot < slots; slot++) {
+            successors[slot] = NOT_FORCED;
+            if (offsets[slot] >= 0 && lengths[slot] == 1 && windowLength > 0) {
+                System.arraycopy(keys, slot * windowLength + 1, following, 0, windowLength - 1);
+                following[windowLength - 1] = lists.charAt(offsets[slot]);
+                successors[slot] = find(followingWindow, 0);
+            }
+        }
+    }
+
+    // Returns the number of slots of a table of the given number of windows (a power of two).
+    private static int slots(int windows) {
+        return Integer.highestOneBit((int) Math.max(1, Math.ceil(windows / LOAD_FACTOR)) * 2 - 1);
+    }
+
+    /** Returns an estimate of the number of bytes this table occupies on the heap. */
+    public long estimatedSize() {
+        return 5 * ARRAY_BYTES + (mask + 1L) * (4 * 4 + 2 * windowLength) + lists.estimatedSize();
+    }
+
+    /** Returns an estimate of the number of bytes that a table of the given number
+     *  of windows (of the given length) and characters, quantized to the given
+     *  number of bits, would occupy on the heap. */
+    public static long estimatedSize(int windows, long chars, int windowLength, int quantizationBits) {
+        return 5 * ARRAY_BYTES + (long) slots(windows) * (4 * 4 + 2 * windowLength)
+               + Distributions.estimatedSize(chars, quantizationBits);
+    }
+
+    // Mixes the high bits of a hash code into its low bits, as HashMap does.
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /** Returns the slot of the window that starts at the given position of the given
+     *  text, or -1 if the table does not contain it. */
+    public int find(CharSequence text, int start) {
+        int hash = 0;
+        for (int i = start; i < start + windowLength; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        for (int slot = spread(hash) & mask; offsets[slot] >= 0; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && matches(slot, text, start)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    // Returns true if the window of the given slot is the one that starts at the
+    // given position of the given text.
+    private boolean matches(int slot, CharSequence text, int start) {
+        int key = slot * windowLength;
+        for (int i = 0; i < windowLength; i++) {
+            if (keys[key + i] != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the first character in the list of the given slot whose cp is greater
+     *  than r (or its last character, if there is no such character), as
+     *  LanguageModel.getRandomChar does; a space if the list is empty. */
+    public char charAt(int slot, double r) {
+        return lists.charAt(offsets[slot], offsets[slot] + lengths[slot], r);
+    }
+
+    /** Returns true if the list of the given slot has a single character, which
+     *  is then the only character that can follow its window. */
+    public boolean isForced(int slot) {
+        return successors[slot] != NOT_FORCED;
+    }
+
+    /** Returns the single character that follows the window of the given forced slot. */
+    public char forcedChar(int slot) {
+        return lists.charAt(offsets[slot]);
+    }
+
+    /** Returns the slot of the window that follows the window of the given forced
+     *  slot (its last windowLength - 1 characters and its forced character), or -1
+     *  if the table does not contain it. */
+    public int successor(int slot) {
+        return successors[slot];
+    }
+
+    /** Appends to the given text the chain of forced characters that starts at the
+     *  given forced slot, up to the given number of characters, following the
+     *  precomputed successors (without hashing). Returns the slot reached: a slot
+     *  that is not forced, -1 if the chain leaves the table, or the next forced
+     *  slot if max characters were appended. */
+    public int appendForced(int slot, StringBuilder text, int max) {
+        for (int n = 0; n < max && slot >= 0 && successors[slot] != NOT_FORCED; n++) {
+            text.append(lists.charAt(offsets[slot]));
+            slot = successors[slot];
+        }
+        return slot;
+    }
+
+    /** Returns the number of characters in the list of the given slot. */
+    public int listSize(int slot) {
+        return lengths[slot];
+    }
+}